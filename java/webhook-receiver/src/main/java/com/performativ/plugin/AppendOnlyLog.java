@@ -0,0 +1,164 @@
+package com.performativ.plugin;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * Append-only list for many concurrent writers and readers, without copying.
+ *
+ * <p>Elements live in fixed-size chunks of {@value #CHUNK_SIZE}, so an append
+ * never moves existing elements: a writer reserves an index with one atomic
+ * increment and stores the element into its chunk. Readers only ever see the
+ * <em>published</em> prefix, the longest run of indexes whose elements have
+ * all been stored, so a snapshot never has gaps even when writers finish out
+ * of order. Whichever writer completes the run advances the published count.
+ *
+ * <p>{@link #snapshot()} returns a read-only view of the prefix published at
+ * that moment; elements appended later are not visible through it. Taking a
+ * snapshot and iterating it allocate nothing per element.
+ *
+ * <p>Appends take no lock except when the chunk directory itself has to grow,
+ * which happens once per doubling of the directory.
+ */
+public final class AppendOnlyLog<E> {
+
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** Next index to hand out to a writer. */
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    /** Elements {@code [0, published)} are stored and visible to readers. */
+    private final AtomicInteger published = new AtomicInteger();
+
+    private volatile AtomicReferenceArray<AtomicReferenceArray<E>> chunks = new AtomicReferenceArray<>(16);
+
+    /**
+     * Append an element.
+     *
+     * @return the element's index
+     */
+    public int append(E element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+        return append(index -> element);
+    }
+
+    /**
+     * Append an element built from the index it will be stored at, e.g. to
+     * embed a sequence number. The factory runs after the index is reserved
+     * and must neither throw nor return {@code null}; elements after it are not visible
+     * until it returns.
+     *
+     * @return the element's index
+     */
+    public int append(IntFunction<E> factory) {
+        int index = reserved.getAndIncrement();
+        if (index < 0) {
+            reserved.decrementAndGet();
+            throw new IllegalStateException("Log is full");
+        }
+        E element = factory.apply(index);
+        chunkFor(index).set(index & CHUNK_MASK, element);
+        publish();
+        return index;
+    }
+
+    /** Number of published elements. */
+    public int size() {
+        return published.get();
+    }
+
+    /**
+     * Element at a published index.
+     *
+     * @throws IndexOutOfBoundsException if the index is not published yet
+     */
+    public E get(int index) {
+        if (index < 0 || index >= published.get()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return element(index);
+    }
+
+    /** Read-only view of the elements published so far. */
+    public List<E> snapshot() {
+        int size = published.get();
+        return new AbstractList<>() {
+            @Override
+            public E get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return element(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private E element(int index) {
+        return chunks.get(index >>> CHUNK_SHIFT).get(index & CHUNK_MASK);
+    }
+
+    /** Advance the published count over every element that has been stored. */
+    private void publish() {
+        int next = published.get();
+        while (next < reserved.get()) {
+            AtomicReferenceArray<AtomicReferenceArray<E>> directory = chunks;
+            int chunkIndex = next >>> CHUNK_SHIFT;
+            AtomicReferenceArray<E> chunk = chunkIndex < directory.length() ? directory.get(chunkIndex) : null;
+            if (chunk == null || chunk.get(next & CHUNK_MASK) == null) {
+                // That writer has not stored its element yet; it will publish when it does
+                return;
+            }
+            published.compareAndSet(next, next + 1);
+            next = published.get();
+        }
+    }
+
+    private AtomicReferenceArray<E> chunkFor(int index) {
+        int chunkIndex = index >>> CHUNK_SHIFT;
+        AtomicReferenceArray<AtomicReferenceArray<E>> directory = chunks;
+        if (chunkIndex >= directory.length()) {
+            directory = growDirectory(chunkIndex);
+        }
+        AtomicReferenceArray<E> chunk = directory.get(chunkIndex);
+        if (chunk == null) {
+            directory.compareAndSet(chunkIndex, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = directory.get(chunkIndex);
+        }
+        return chunk;
+    }
+
+    private synchronized AtomicReferenceArray<AtomicReferenceArray<E>> growDirectory(int chunkIndex) {
+        AtomicReferenceArray<AtomicReferenceArray<E>> directory = chunks;
+        if (chunkIndex < directory.length()) {
+            return directory;
+        }
+        int length = directory.length();
+        while (length <= chunkIndex) {
+            length *= 2;
+        }
+        AtomicReferenceArray<AtomicReferenceArray<E>> grown = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < directory.length(); i++) {
+            AtomicReferenceArray<E> chunk = directory.get(i);
+            if (chunk == null) {
+                // Claim the slot so no writer installs a chunk into the old directory after the copy
+                directory.compareAndSet(i, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+                chunk = directory.get(i);
+            }
+            grown.set(i, chunk);
+        }
+        chunks = grown;
+        return grown;
+    }
+}
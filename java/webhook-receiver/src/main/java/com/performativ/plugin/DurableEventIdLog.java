@@ -0,0 +1,280 @@
+package com.performativ.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped log of processed event IDs, so idempotency
+ * survives restarts without an external database.
+ *
+ * <p>Each record is {@value #RECORD_SIZE} bytes: the two halves of the
+ * (namespaced) UUID key, the time it was added and a CRC32C of those three.
+ * Records are written straight into a memory-mapped segment file, so an append
+ * costs a few memory writes and survives a process crash as soon as it returns.
+ * A background thread forces the range appended since the last flush to disk
+ * every {@code fsyncIntervalMillis} (group commit), which bounds what an
+ * operating system crash or power loss can lose. The force runs outside the
+ * lock, so appends carry on while the disk catches up.
+ *
+ * <p>A page can be torn by a power loss, leaving a record only partly on
+ * disk. Replay skips records whose CRC does not match, as
+ * {@link WebhookJournal} does, and keeps reading; an all-zero record marks
+ * the end of what was written.
+ *
+ * <p>Segments hold {@value #RECORDS_PER_SEGMENT} records. When one is full a new
+ * segment is started, and segments that only contain expired records, or more
+ * records than the window can hold, are deleted. On startup all remaining
+ * segments are replayed in order to rebuild the in-memory {@link EventIdWindow}.
+ */
+public final class DurableEventIdLog implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DurableEventIdLog.class);
+
+    /** Key, timestamp and CRC, padded so that records never straddle a page. */
+    static final int RECORD_SIZE = 32;
+    /** Bytes covered by a record's CRC, which is stored right after them. */
+    private static final int CHECKED_SIZE = 24;
+    static final int RECORDS_PER_SEGMENT = 1 << 20;
+    private static final long SEGMENT_SIZE = (long) RECORD_SIZE * RECORDS_PER_SEGMENT;
+    private static final String SEGMENT_PREFIX = "event-ids-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /** Receives each record during {@link #replay}. */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(long msb, long lsb, long addedAt);
+    }
+
+    private final Path directory;
+    private final long retentionMillis;
+    private final int maxSegments;
+    private final ScheduledExecutorService flusher;
+
+    /** Segments on disk, oldest first; the last one is being appended to. */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private MappedByteBuffer current;
+    /** Bytes of {@link #current} up to which a flush has been started. */
+    private int flushedTo;
+
+    /** Scratch space for the checked bytes of a record. Guarded by {@code this}. */
+    private final ByteBuffer record = ByteBuffer.allocate(CHECKED_SIZE);
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * @param directory           where segment files are kept (created if missing)
+     * @param retentionMillis     records older than this are not replayed
+     * @param maxEntries          window size; older segments beyond it are deleted
+     * @param fsyncIntervalMillis how often dirty data is forced to disk
+     */
+    public DurableEventIdLog(Path directory, long retentionMillis, int maxEntries,
+                             long fsyncIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.retentionMillis = retentionMillis;
+        this.maxSegments = maxEntries / RECORDS_PER_SEGMENT + 2;
+        Files.createDirectories(directory);
+
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> existing = files
+                    .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+            for (Path path : existing) {
+                segments.add(new Segment(path, segmentNumber(path)));
+            }
+        }
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-id-log-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, fsyncIntervalMillis, fsyncIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replay all unexpired records, oldest first, and open the log for appending.
+     * Must be called once, before the first {@link #append}.
+     *
+     * @return the number of records replayed
+     */
+    public synchronized long replay(RecordConsumer consumer) throws IOException {
+        long expiredBefore = System.currentTimeMillis() - retentionMillis;
+        long replayed = 0;
+        long corrupt = 0;
+        int position = 0;
+
+        for (Segment segment : segments) {
+            MappedByteBuffer buffer = map(segment.path);
+            position = 0;
+            while (position + RECORD_SIZE <= buffer.capacity()) {
+                buffer.get(position, record.array());
+                int storedCrc = buffer.getInt(position + CHECKED_SIZE);
+                if (storedCrc == 0 && isZero(record)) {
+                    // Never written
+                    break;
+                }
+                position += RECORD_SIZE;
+                if (checksum() != storedCrc) {
+                    // Torn by a crash; the records after it may still be intact
+                    corrupt++;
+                    continue;
+                }
+                long addedAt = record.getLong(16);
+                segment.lastAddedAt = Math.max(segment.lastAddedAt, addedAt);
+                if (addedAt >= expiredBefore) {
+                    consumer.accept(record.getLong(0), record.getLong(8), addedAt);
+                    replayed++;
+                }
+            }
+            current = buffer;
+        }
+        if (corrupt > 0) {
+            log.warn("Skipped {} corrupt record(s) in the event ID log in {}", corrupt, directory);
+        }
+
+        if (current != null && position + RECORD_SIZE <= current.capacity()) {
+            current.position(position);
+            flushedTo = position;
+        } else {
+            roll();
+        }
+
+        log.info("Replayed {} processed event ID(s) from {} segment(s) in {}",
+                replayed, segments.size(), directory);
+        return replayed;
+    }
+
+    /**
+     * Append a record. Durable against process crashes on return; durable
+     * against OS crashes after the next group commit.
+     */
+    public synchronized void append(long msb, long lsb, long addedAt) {
+        if (current.remaining() < RECORD_SIZE) {
+            roll();
+        }
+        int position = current.position();
+        record.putLong(0, msb);
+        record.putLong(8, lsb);
+        record.putLong(16, addedAt);
+        current.put(position, record.array());
+        // Written last: a record without a matching CRC is skipped on replay
+        current.putInt(position + CHECKED_SIZE, checksum());
+        current.position(position + RECORD_SIZE);
+        segments.peekLast().lastAddedAt = addedAt;
+    }
+
+    /**
+     * Force what was appended since the last flush to disk. Only the range is
+     * taken under the lock, so appends are not held up by the disk.
+     */
+    public void flush() {
+        MappedByteBuffer segment;
+        int from;
+        int to;
+        synchronized (this) {
+            if (current == null || current.position() == flushedTo) {
+                return;
+            }
+            segment = current;
+            from = flushedTo;
+            to = current.position();
+            flushedTo = to;
+        }
+        segment.force(from, to - from);
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            // Let a flush in progress finish before the last one
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void roll() {
+        try {
+            if (current != null) {
+                current.force();
+            }
+            long number = segments.isEmpty() ? 1 : segments.peekLast().number + 1;
+            Path path = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+            Segment segment = new Segment(path, number);
+            current = map(path);
+            flushedTo = 0;
+            segments.add(segment);
+            deleteObsoleteSegments();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start event ID log segment in " + directory, e);
+        }
+    }
+
+    /** CRC32C of the bytes in {@link #record}. Caller holds the lock. */
+    private int checksum() {
+        crc.reset();
+        crc.update(record.array(), 0, CHECKED_SIZE);
+        return (int) crc.getValue();
+    }
+
+    private static boolean isZero(ByteBuffer bytes) {
+        for (int i = 0; i < CHECKED_SIZE; i += 8) {
+            if (bytes.getLong(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void deleteObsoleteSegments() throws IOException {
+        long expiredBefore = System.currentTimeMillis() - retentionMillis;
+        while (segments.size() > 1
+                && (segments.size() > maxSegments || segments.peekFirst().lastAddedAt < expiredBefore)) {
+            Files.deleteIfExists(segments.removeFirst().path);
+        }
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+        }
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long number;
+        long lastAddedAt;
+
+        Segment(Path path, long number) {
+            this.path = path;
+            this.number = number;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.performativ.plugin;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects events per entity type into batches, to be hydrated with one index
+ * request each instead of one GET per event.
+ *
+ * <p>The first event of a type starts a short window. The batch is handed over
+ * when the window closes or as soon as it holds {@code maxSize} events,
+ * whichever comes first, so a steady trickle of events is delayed by at most
+ * the window and an import burst is sent in full batches straight away.
+ */
+public final class EntityBatcher<T> implements AutoCloseable {
+
+    private final long windowMillis;
+    private final int maxSize;
+    private final BiConsumer<WebhookEvent.Entity, List<T>> handler;
+    private final ScheduledExecutorService timer;
+
+    private final Map<WebhookEvent.Entity, Collector> collectors = new EnumMap<>(WebhookEvent.Entity.class);
+
+    /**
+     * @param entities entity types to batch
+     * @param window   how long the first event of a batch waits for more
+     * @param maxSize  events per batch
+     * @param handler  receives each batch, on the timer thread or the thread that filled it
+     */
+    public EntityBatcher(Iterable<WebhookEvent.Entity> entities, Duration window, int maxSize,
+                         BiConsumer<WebhookEvent.Entity, List<T>> handler) {
+        this.windowMillis = window.toMillis();
+        this.maxSize = maxSize;
+        this.handler = handler;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "entity-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (WebhookEvent.Entity entity : entities) {
+            collectors.put(entity, new Collector(entity));
+        }
+    }
+
+    /** Whether events of this entity type are batched. */
+    public boolean batches(WebhookEvent.Entity entity) {
+        return collectors.containsKey(entity);
+    }
+
+    /** Add an item for an event of a {@linkplain #batches batched} type to the current batch of its type. */
+    public void add(WebhookEvent.Entity entity, T item) {
+        List<T> full = collectors.get(entity).add(item);
+        if (full != null) {
+            handler.accept(entity, full);
+        }
+    }
+
+    /** Hand all partial batches to the handler now and stop the timer. */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        for (Collector collector : collectors.values()) {
+            collector.flush();
+        }
+    }
+
+    /** The current batch of one entity type. */
+    private final class Collector {
+        final WebhookEvent.Entity entity;
+        /** Guarded by {@code this}. */
+        List<T> events = new ArrayList<>();
+        /** Closes the current window. Guarded by {@code this}. */
+        ScheduledFuture<?> deadline;
+
+        Collector(WebhookEvent.Entity entity) {
+            this.entity = entity;
+        }
+
+        /** @return the batch if this event filled it, else {@code null} */
+        synchronized List<T> add(T item) {
+            events.add(item);
+            if (events.size() >= maxSize) {
+                return take();
+            }
+            if (deadline == null) {
+                deadline = timer.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+            return null;
+        }
+
+        void flush() {
+            List<T> batch;
+            synchronized (this) {
+                batch = take();
+            }
+            if (!batch.isEmpty()) {
+                handler.accept(entity, batch);
+            }
+        }
+
+        /** Caller holds {@code this}. */
+        private List<T> take() {
+            if (deadline != null) {
+                deadline.cancel(false);
+                deadline = null;
+            }
+            List<T> batch = events;
+            events = new ArrayList<>(Math.min(maxSize, 64));
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package com.performativ.plugin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fetches the latest state of entities named in webhooks and hands it to the
+ * {@link EntityHandler} beans.
+ *
+ * <p>Fetching is the slowest part of handling a webhook, so it runs on its own
+ * bounded pool of worker threads rather than on the request (or async
+ * ingestion) thread. Each fetch GETs the payload's {@code url} through
+ * {@link PluginApiClient} with a timeout. At most
+ * {@code webhook.fetch.max-in-flight} requests are in flight per API host at a
+ * time (see {@link HostRequestLimiter}), so a burst cannot trip the API's rate
+ * limit; a fetch that cannot get a slot within the timeout fails.
+ * {@link PluginApiClient} only sends requests to the host of
+ * {@code api.base-url}, so in practice that host gets all the slots, and a
+ * receiver shared by tenants on different API hosts needs one deployment per
+ * host.
+ *
+ * <p>Fetches of the same URL are single-flight (see {@link SingleFlight}):
+ * overlapping fetches share one request as long as it reflects their event,
+ * which saves calls against the tenant's rate limit when several webhooks for
+ * one entity arrive together. An {@code Updated} that arrives while the
+ * {@code Created} is still being fetched sends a new request. Handlers
+ * therefore receive the same {@link JsonNode} for shared fetches and must not
+ * modify it.
+ *
+ * <p>Entity types listed in {@code webhook.batch.entities} are hydrated in
+ * batches instead: events are collected per type for up to
+ * {@code webhook.batch.window-ms} or {@code webhook.batch.max-size} events
+ * (see {@link EntityBatcher}), and each batch is fetched with one request to
+ * the type's index endpoint, filtered on the batch's entity IDs. This turns
+ * the thousands of GETs of an import into a few dozen, and also covers types
+ * such as {@code Document} whose webhooks carry no {@code url}. Each entity in
+ * the response is passed to the handlers with its event, wrapped in
+ * {@code {"data": ...}} like a single GET's response; an event whose
+ * entity is missing from the response (e.g. deleted meanwhile) counts as
+ * failed. Keep the batch size within the index endpoint's page size.
+ *
+ * <p>Fetches run in parallel, but the handlers see each entity's fetches in
+ * the order they were submitted: fetches of one entity (same namespace,
+ * entity type and entity ID) are lined up per entity, and a fetch that
+ * completes early is held until the ones submitted before it have been
+ * handed over or have failed. Handlers are therefore never called
+ * concurrently for the same entity, and never with an older state after a
+ * newer one. Different entities are handled concurrently.
+ *
+ * <p>At most {@code webhook.fetch.queue-capacity} fetches are waiting or in
+ * progress. When that many are, submitting another blocks until one has
+ * finished, rather than dropping the fetch or growing the heap without
+ * limit; the wait holds up the submitting lane or request, which admission
+ * control upstream then limits.
+ *
+ * <p>With {@code spring.threads.virtual.enabled}, each fetch runs on its own
+ * virtual thread instead of a pooled worker, so there is no pool to size:
+ * {@code webhook.fetch.concurrency} is ignored, and up to
+ * {@code webhook.fetch.queue-capacity} fetches are in progress at once.
+ * {@code webhook.fetch.max-in-flight} is then what bounds requests in flight
+ * per host, and fetches wait for a slot in arrival order, without a timeout,
+ * as they would otherwise wait in the queue.
+ *
+ * <h3>Configuration</h3>
+ * <pre>
+ * WEBHOOK_FETCH_ENABLED=true
+ * WEBHOOK_FETCH_CONCURRENCY=8       # optional, worker threads
+ * WEBHOOK_FETCH_MAX_IN_FLIGHT=4     # optional, requests in flight per API host
+ * WEBHOOK_FETCH_TIMEOUT_MS=10000    # optional, per request
+ * WEBHOOK_FETCH_QUEUE_CAPACITY=10000
+ * WEBHOOK_BATCH_ENTITIES=Transaction=/api/v1/transactions,Document=/api/v1/documents
+ * WEBHOOK_BATCH_WINDOW_MS=50        # optional
+ * WEBHOOK_BATCH_MAX_SIZE=25         # optional, IDs per index request
+ * WEBHOOK_BATCH_ID_FILTER=filter[id] # optional, query parameter for the IDs
+ * </pre>
+ *
+ * <p>Also requires the standard API credentials:
+ * {@code PLUGIN_CLIENT_ID}, {@code PLUGIN_CLIENT_SECRET},
+ * {@code TOKEN_BROKER_URL}, {@code API_BASE_URL}.
+ */
+@Component
+public class EntityFetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityFetcher.class);
+
+    private final boolean enabled;
+    private final PluginApiClient apiClient;
+    private final List<EntityHandler> handlers;
+    private final Duration timeout;
+    private final ExecutorService workers;
+    /** Fetches that may be waiting or in progress. */
+    private final Semaphore admitted;
+    private final HostRequestLimiter requestLimiter;
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final int queueCapacity;
+    private final String idFilter;
+    /** Index endpoint per batched entity type. */
+    private final Map<WebhookEvent.Entity, String> indexPaths;
+    private final EntityBatcher<Fetch> batcher;
+
+    /** Fetches waiting to be handed to the handlers, per entity. */
+    private final ConcurrentHashMap<EntityKey, Sequencer> sequencers = new ConcurrentHashMap<>();
+
+    private final AtomicLong fetched = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public EntityFetcher(
+            ObjectProvider<EntityHandler> handlers,
+            @Value("${webhook.fetch.enabled:false}") boolean enabled,
+            @Value("${webhook.fetch.concurrency:8}") int concurrency,
+            @Value("${webhook.fetch.max-in-flight:4}") int maxInFlight,
+            @Value("${webhook.fetch.timeout-ms:10000}") long timeoutMs,
+            @Value("${webhook.fetch.queue-capacity:10000}") int queueCapacity,
+            @Value("${webhook.batch.entities:}") String batchEntities,
+            @Value("${webhook.batch.window-ms:50}") long batchWindowMs,
+            @Value("${webhook.batch.max-size:25}") int batchMaxSize,
+            @Value("${webhook.batch.id-filter:filter[id]}") String idFilter,
+            @Value("${token.broker-url:}") String tokenBrokerUrl,
+            @Value("${api.base-url:}") String apiBaseUrl,
+            @Value("${plugin.client-id:}") String clientId,
+            @Value("${plugin.client-secret:}") String clientSecret,
+            @Value("${token.audience:backend-api}") String audience,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.enabled = enabled;
+        this.handlers = handlers.orderedStream().toList();
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.queueCapacity = queueCapacity;
+        this.idFilter = idFilter;
+        this.indexPaths = parseIndexPaths(batchEntities);
+
+        if (!enabled) {
+            this.apiClient = null;
+            this.workers = null;
+            this.admitted = null;
+            this.requestLimiter = null;
+            this.batcher = null;
+            return;
+        }
+        this.apiClient = new PluginApiClient(tokenBrokerUrl, apiBaseUrl, clientId, clientSecret, audience);
+        this.admitted = new Semaphore(queueCapacity);
+        // Virtual threads wait for a slot in arrival order instead of in the pool's queue
+        this.requestLimiter = new HostRequestLimiter(maxInFlight, virtualThreads ? null : this.timeout);
+        if (virtualThreads) {
+            this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("entity-fetch-", 1).factory());
+        } else {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.workers = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                        Thread thread = new Thread(runnable, "entity-fetch-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        this.batcher = indexPaths.isEmpty() ? null
+                : new EntityBatcher<>(indexPaths.keySet(), Duration.ofMillis(batchWindowMs), batchMaxSize,
+                        this::submitBatch);
+        log.info("Entity fetching enabled: concurrency={} maxInFlightPerHost={} timeout={}ms handlers={} batched={}",
+                virtualThreads ? "virtual" : concurrency, maxInFlight, timeoutMs, this.handlers.size(),
+                indexPaths.keySet());
+    }
+
+    /** Whether {@code Created}/{@code Updated} entities are fetched. */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Fetch an entity in the background and pass it to the handlers, after
+     * the fetches submitted earlier for the same entity. Blocks while
+     * {@code webhook.fetch.queue-capacity} fetches are waiting or in progress.
+     *
+     * @param event     the webhook naming the entity
+     * @param url       the payload's {@code url}; may be {@code null} for batched types
+     * @param namespace the idempotency namespace of the webhook's tenant, or {@code null}
+     * @return completes once the handlers have been called, or exceptionally
+     *         if the fetch or a handler failed
+     */
+    public CompletableFuture<Void> submit(WebhookEvent event, String url, String namespace) {
+        boolean batched = batcher != null && batcher.batches(event.entity());
+        if (!batched && url == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long submittedAt = System.nanoTime();
+        Fetch fetch = line(event, namespace);
+        try {
+            if (batched) {
+                batcher.add(event.entity(), fetch);
+            } else {
+                dispatch(() -> fetch(fetch, url, submittedAt));
+            }
+        } catch (RejectedExecutionException e) {
+            dropped.incrementAndGet();
+            log.warn("Fetching has stopped, dropping fetch of {} {} ({} dropped so far)",
+                    event.entityName(), event.entityIdText(), dropped.get());
+            arrived(fetch, null, e);
+        }
+        return fetch.done;
+    }
+
+    /** Entities fetched and handed to the handlers. */
+    public long fetchedCount() {
+        return fetched.get();
+    }
+
+    /** Fetches that failed or timed out. */
+    public long failedCount() {
+        return failed.get();
+    }
+
+    /** Fetches dropped because fetching had stopped. */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    /** Fetches answered by another fetch's request for the same URL. */
+    public long sharedCount() {
+        return singleFlight.sharedCount();
+    }
+
+    /** Index requests made for batched entity types. */
+    public long batchCount() {
+        return batches.get();
+    }
+
+    private void fetch(Fetch fetch, String url, long submittedAt) {
+        WebhookEvent event = fetch.event;
+        JsonNode entity;
+        try {
+            String absolute = absolute(url);
+            entity = singleFlight.get(absolute, event, submittedAt, () -> get(absolute));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            arrived(fetch, null, e);
+            return;
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.warn("Failed to fetch {} {} from {}: {}",
+                    event.entityName(), event.entityIdText(), url, e.getMessage());
+            arrived(fetch, null, e);
+            return;
+        }
+        arrived(fetch, entity, null);
+    }
+
+    /**
+     * Run a fetch on a worker, or on a new virtual thread, once fewer than
+     * {@code webhook.fetch.queue-capacity} fetches are waiting or in progress.
+     * An interrupt does not end the wait, so the fetch is not lost; it is
+     * restored afterwards.
+     *
+     * @throws RejectedExecutionException if fetching has stopped
+     */
+    private void dispatch(Runnable fetch) {
+        admitted.acquireUninterruptibly();
+        try {
+            workers.execute(() -> {
+                try {
+                    fetch.run();
+                } finally {
+                    admitted.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admitted.release();
+            throw e;
+        }
+    }
+
+    private void submitBatch(WebhookEvent.Entity entity, List<Fetch> events) {
+        try {
+            dispatch(() -> fetchBatch(entity, events));
+        } catch (RejectedExecutionException e) {
+            dropped.addAndGet(events.size());
+            log.warn("Fetching has stopped, dropping batch of {} {} fetch(es) ({} dropped so far)",
+                    events.size(), entity.wireName(), dropped.get());
+            events.forEach(fetch -> arrived(fetch, null, e));
+        }
+    }
+
+    /** Fetch a batch with one filtered index request and pass each entity on with its event(s). */
+    private void fetchBatch(WebhookEvent.Entity entity, List<Fetch> events) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (Fetch fetch : events) {
+            ids.add(URLEncoder.encode(fetch.event.entityIdText(), StandardCharsets.UTF_8));
+        }
+        String url = absolute(indexPaths.get(entity) + "?"
+                + URLEncoder.encode(idFilter, StandardCharsets.UTF_8) + "=" + String.join(",", ids));
+
+        Map<String, JsonNode> byId = new HashMap<>();
+        try {
+            batches.incrementAndGet();
+            for (JsonNode item : get(url).path("data")) {
+                // Same shape as the response of the entity's own URL
+                byId.put(item.path("id").asText(), JsonNodeFactory.instance.objectNode().set("data", item));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            events.forEach(fetch -> arrived(fetch, null, e));
+            return;
+        } catch (Exception e) {
+            failed.addAndGet(events.size());
+            log.warn("Failed to fetch a batch of {} {}: {}", events.size(), entity.wireName(), e.getMessage());
+            events.forEach(fetch -> arrived(fetch, null, e));
+            return;
+        }
+
+        for (Fetch fetch : events) {
+            JsonNode item = byId.get(fetch.event.entityIdText());
+            if (item != null) {
+                arrived(fetch, item, null);
+            } else {
+                failed.incrementAndGet();
+                log.warn("{} {} was not in its batch's index response", entity.wireName(), fetch.event.entityIdText());
+                arrived(fetch, null, new IOException(
+                        entity.wireName() + " " + fetch.event.entityIdText() + " was not in its batch's index response"));
+            }
+        }
+    }
+
+    /** Line a fetch up behind the earlier fetches of its entity. */
+    private Fetch line(WebhookEvent event, String namespace) {
+        EntityKey key = new EntityKey(namespace, event.entityName(), event.entityIdText());
+        Fetch[] fetch = new Fetch[1];
+        // Under the map's lock, so the sequencer cannot be retired in between
+        sequencers.compute(key, (k, sequencer) -> {
+            Sequencer lined = sequencer != null ? sequencer : new Sequencer(k);
+            fetch[0] = new Fetch(event, lined);
+            synchronized (lined) {
+                lined.fetches.add(fetch[0]);
+            }
+            return lined;
+        });
+        return fetch[0];
+    }
+
+    /**
+     * Record a fetch's outcome, then hand over every fetch at the head of its
+     * entity's line that has one. Only one thread hands over an entity's
+     * fetches at a time; it takes those that arrive meanwhile with it.
+     */
+    private void arrived(Fetch fetch, JsonNode entity, Exception failure) {
+        Sequencer sequencer = fetch.sequencer;
+        synchronized (sequencer) {
+            fetch.entity = entity;
+            fetch.failure = failure;
+            fetch.arrived = true;
+            if (sequencer.draining) {
+                return;
+            }
+            sequencer.draining = true;
+        }
+        while (true) {
+            Fetch next;
+            synchronized (sequencer) {
+                next = sequencer.fetches.peek();
+                if (next == null || !next.arrived) {
+                    sequencer.draining = false;
+                    break;
+                }
+                sequencer.fetches.poll();
+            }
+            if (next.failure != null) {
+                next.done.completeExceptionally(next.failure);
+            } else {
+                deliver(next.event, next.entity, next.done);
+            }
+        }
+        // Outside the sequencer's lock, which is always taken after the map's
+        sequencers.computeIfPresent(sequencer.key, (k, current) -> {
+            synchronized (current) {
+                return current.fetches.isEmpty() && !current.draining ? null : current;
+            }
+        });
+    }
+
+    private void deliver(WebhookEvent event, JsonNode entity, CompletableFuture<Void> done) {
+        fetched.incrementAndGet();
+
+        if (handlers.isEmpty()) {
+            log.info("Fetched {} {} (register an EntityHandler bean to use it)",
+                    event.entityName(), event.entityIdText());
+        }
+        Exception failure = null;
+        for (EntityHandler handler : handlers) {
+            try {
+                handler.onEntity(event, entity);
+            } catch (Exception e) {
+                log.error("Entity handler {} failed for {} {}",
+                        handler.getClass().getSimpleName(), event.entityName(), event.entityIdText(), e);
+                failure = e;
+            }
+        }
+        if (failure == null) {
+            done.complete(null);
+        } else {
+            done.completeExceptionally(failure);
+        }
+    }
+
+    /** GET within the host's in-flight limit. */
+    private JsonNode get(String url) throws IOException, InterruptedException {
+        return requestLimiter.send(url, () -> apiClient.get(url, timeout));
+    }
+
+    private String absolute(String url) {
+        return url.startsWith("/") ? apiClient.apiBaseUrl() + url : url;
+    }
+
+    /** Give queued fetches a short grace period to finish. */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (workers == null) {
+            return;
+        }
+        if (batcher != null) {
+            batcher.close();
+        }
+        workers.shutdown();
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            int abandoned = queueCapacity - admitted.availablePermits();
+            workers.shutdownNow();
+            log.warn("Abandoning {} unfinished fetch(es) on shutdown", abandoned);
+        }
+        log.info("Entity fetching stopped: fetched={} shared={} batches={} failed={} dropped={}",
+                fetched.get(), singleFlight.sharedCount(), batches.get(), failed.get(), dropped.get());
+    }
+
+    /** Parse {@code Entity=/index/path} pairs. */
+    private static Map<WebhookEvent.Entity, String> parseIndexPaths(String config) {
+        Map<WebhookEvent.Entity, String> paths = new EnumMap<>(WebhookEvent.Entity.class);
+        for (String entry : config.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.indexOf('=');
+            WebhookEvent.Entity entity = separator <= 0 ? null
+                    : WebhookEvent.Entity.fromWireName(entry.substring(0, separator).trim());
+            if (entity == null || entity == WebhookEvent.Entity.OTHER || separator == entry.length() - 1) {
+                throw new IllegalArgumentException(
+                        "Invalid webhook.batch.entities entry, expected Entity=/index/path: " + entry.trim());
+            }
+            paths.put(entity, entry.substring(separator + 1).trim().replaceAll("/+$", ""));
+        }
+        return Collections.unmodifiableMap(paths);
+    }
+
+    /** Identifies an entity of one tenant. */
+    private record EntityKey(String namespace, String entity, String entityId) {
+    }
+
+    /** The fetches of one entity that have not been handed to the handlers yet, oldest first. */
+    private static final class Sequencer {
+        final EntityKey key;
+        /** Guarded by this sequencer, as are the fields below and the outcome fields of its fetches. */
+        final ArrayDeque<Fetch> fetches = new ArrayDeque<>();
+        /** Whether a thread is handing fetches over. */
+        boolean draining;
+
+        Sequencer(EntityKey key) {
+            this.key = key;
+        }
+    }
+
+    /** An event to fetch the entity of, its place in line, and its completion. */
+    private static final class Fetch {
+        final WebhookEvent event;
+        final Sequencer sequencer;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        boolean arrived;
+        JsonNode entity;
+        Exception failure;
+
+        Fetch(WebhookEvent event, Sequencer sequencer) {
+            this.event = event;
+            this.sequencer = sequencer;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.performativ.plugin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Receives the latest state of an entity after a {@code Created} or
+ * {@code Updated} webhook, as fetched by {@link EntityFetcher}.
+ *
+ * <p>Declare beans implementing this interface to add your business logic;
+ * each one is called for every fetched entity, on a fetch worker thread.
+ * Calls for one entity (same tenant, entity type and entity ID) are made one
+ * at a time, in the order its events were submitted; different entities may
+ * be handled concurrently.
+ *
+ * <pre>{@code
+ * @Component
+ * class ClientSync implements EntityHandler {
+ *     public void onEntity(WebhookEvent event, JsonNode entity) {
+ *         if (event.entity() == WebhookEvent.Entity.CLIENT) {
+ *             // upsert into your database
+ *         }
+ *     }
+ * }
+ * }</pre>
+ */
+@FunctionalInterface
+public interface EntityHandler {
+
+    /**
+     * @param event  the webhook that triggered the fetch
+     * @param entity the response body of the entity's {@code url}
+     */
+    void onEntity(WebhookEvent event, JsonNode entity);
+}
@@ -0,0 +1,388 @@
+package com.performativ.plugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded, time-windowed set of processed {@code event_id}s.
+ *
+ * <p>An ID is remembered for the retention window (by default the platform's
+ * ~48 hour retry horizon, after which no more redeliveries are expected) and
+ * at most {@code maxEntries} IDs are kept. IDs are evicted oldest-first in the
+ * order they were added: every {@link #add} removes the few entries at the head
+ * of the insertion queue that have expired or exceed the bound, so eviction is
+ * constant time per insert and there is never a full sweep.
+ *
+ * <p>Evicting an ID early because of the size bound only weakens idempotency
+ * for very old events; choose {@code maxEntries} above the number of events
+ * expected within the retention window.
+ *
+ * <h3>Layout</h3>
+ * Event IDs are UUIDs, so each one is stored as two {@code long}s rather than
+ * as a {@code String} in a hash map. The set is split into lock-striped
+ * segments; each segment is an open-addressed, linear-probing table of
+ * {@code (msb, lsb)} pairs plus a ring buffer recording insertion order and
+ * time. That is roughly 56 bytes per remembered ID, with no per-entry objects.
+ * Eviction order and the {@code maxEntries} bound apply per segment (each
+ * segment holds {@code maxEntries / 16}), which is equivalent for the random
+ * distribution of UUIDs.
+ * The idempotency namespace is folded into the key by XOR-ing it with a
+ * 128-bit hash of the namespace. IDs that are not UUIDs are mapped to a
+ * name-based UUID of their text.
+ *
+ * <p>With a {@link DurableEventIdLog} the window is rebuilt from disk on
+ * startup and every {@linkplain #persist persisted} key is appended to the
+ * log, so restarts do not forget which events were already processed.
+ */
+public final class EventIdWindow {
+
+    /** Number of independently locked segments (power of two). */
+    private static final int STRIPES = 16;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Operations of {@link #apply}. */
+    private static final int ADD = 0;
+    private static final int PERSIST = 1;
+    private static final int REMOVE = 2;
+
+    private final long retentionMillis;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /** Durable copy of the window, or {@code null} for memory only. */
+    private final DurableEventIdLog durableLog;
+
+    /** 128-bit hash of each namespace seen, as {@code {msb, lsb}}. */
+    private final ConcurrentHashMap<String, long[]> namespaceKeys = new ConcurrentHashMap<>();
+
+    /**
+     * @param retention  how long an ID is remembered
+     * @param maxEntries maximum number of IDs remembered
+     */
+    public EventIdWindow(Duration retention, int maxEntries) {
+        this.retentionMillis = retention.toMillis();
+        this.durableLog = null;
+        int stripeCapacity = Math.max(1, (maxEntries + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    /**
+     * Create a window backed by a durable log, restoring the IDs it contains.
+     *
+     * @param retention  how long an ID is remembered
+     * @param maxEntries maximum number of IDs remembered
+     * @param durableLog log to replay now and append new IDs to
+     */
+    public EventIdWindow(Duration retention, int maxEntries, DurableEventIdLog durableLog) throws IOException {
+        this.retentionMillis = retention.toMillis();
+        int stripeCapacity = Math.max(1, (maxEntries + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+        long now = System.currentTimeMillis();
+        durableLog.replay((msb, lsb, addedAt) -> {
+            long hash = mix(msb, lsb);
+            stripes[(int) (hash >>> 60) & (STRIPES - 1)].add(msb, lsb, (int) hash, addedAt, now - retentionMillis);
+        });
+        this.durableLog = durableLog;
+    }
+
+    /**
+     * Remember an event ID.
+     *
+     * @param namespace idempotency namespace, or {@code null} for the shared one
+     * @param eventId   the webhook {@code event_id}
+     * @return {@code true} if the ID was not already in the window
+     */
+    public boolean add(String namespace, String eventId) {
+        return apply(ADD, namespace, eventId);
+    }
+
+    /**
+     * Append an ID previously {@linkplain #add added} to the durable log, so it
+     * is remembered across restarts. Does nothing without a log.
+     */
+    public void persist(String namespace, String eventId) {
+        if (durableLog != null) {
+            apply(PERSIST, namespace, eventId);
+        }
+    }
+
+    /** Forget an ID, so the next {@link #add} of it succeeds. */
+    public void remove(String namespace, String eventId) {
+        apply(REMOVE, namespace, eventId);
+    }
+
+    /** Number of IDs currently remembered (including expired ones not yet evicted). */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.count - stripe.forgotten;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Run {@code op} on the namespaced {@code (msb, lsb)} key of an ID. The key
+     * is computed into locals rather than returned, so the hot path does not
+     * allocate for UUID event IDs.
+     */
+    private boolean apply(int op, String namespace, String eventId) {
+        long msb;
+        long lsb;
+        if (isUuid(eventId)) {
+            msb = parseHex(eventId, 0, 8) << 32 | parseHex(eventId, 9, 13) << 16 | parseHex(eventId, 14, 18);
+            lsb = parseHex(eventId, 19, 23) << 48 | parseHex(eventId, 24, 36);
+        } else {
+            UUID nameBased = UUID.nameUUIDFromBytes(eventId.getBytes(StandardCharsets.UTF_8));
+            msb = nameBased.getMostSignificantBits();
+            lsb = nameBased.getLeastSignificantBits();
+        }
+
+        if (namespace != null) {
+            long[] namespaceKey = namespaceKeys.computeIfAbsent(namespace, EventIdWindow::namespaceKey);
+            msb ^= namespaceKey[0];
+            lsb ^= namespaceKey[1];
+        }
+        if (msb == 0 && lsb == 0) {
+            // (0, 0) marks an empty slot
+            lsb = 1;
+        }
+
+        if (op == PERSIST) {
+            durableLog.append(msb, lsb, System.currentTimeMillis());
+            return true;
+        }
+        long hash = mix(msb, lsb);
+        Stripe stripe = stripes[(int) (hash >>> 60) & (STRIPES - 1)];
+        synchronized (stripe) {
+            if (op == REMOVE) {
+                stripe.forget(msb, lsb);
+                return true;
+            }
+            long now = System.currentTimeMillis();
+            return stripe.add(msb, lsb, (int) hash, now, now - retentionMillis);
+        }
+    }
+
+    private static long mix(long msb, long lsb) {
+        long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static boolean isUuid(String id) {
+        if (id.length() != 36 || id.charAt(8) != '-' || id.charAt(13) != '-'
+                || id.charAt(18) != '-' || id.charAt(23) != '-') {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            if (i != 8 && i != 13 && i != 18 && i != 23 && Character.digit(id.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHex(String s, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value << 4 | Character.digit(s.charAt(i), 16);
+        }
+        return value;
+    }
+
+    private static long[] namespaceKey(String namespace) {
+        UUID hash = UUID.nameUUIDFromBytes(("namespace:" + namespace).getBytes(StandardCharsets.UTF_8));
+        return new long[]{hash.getMostSignificantBits(), hash.getLeastSignificantBits()};
+    }
+
+    /**
+     * One lock-striped segment: an open-addressed table of {@code (msb, lsb)}
+     * pairs and a ring buffer of the same keys in insertion order. Both grow
+     * by doubling until the segment's capacity is reached. Guarded by its own
+     * monitor.
+     */
+    private static final class Stripe {
+        final int capacity;
+
+        /** Slot {@code i} holds {@code table[2i]} (msb) and {@code table[2i + 1]} (lsb). */
+        long[] table;
+        int mask;
+
+        /** Insertion order: ring slot {@code i} holds {@code ring[3i]} (msb), {@code ring[3i + 1]} (lsb), {@code ring[3i + 2]} (added at). */
+        long[] ring;
+        int head;
+        int count;
+        /** Ring entries blanked by {@link #forget}, included in {@link #count}. */
+        int forgotten;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            int initial = Math.min(INITIAL_CAPACITY, capacity);
+            this.ring = new long[initial * 3];
+            int slots = tableSlotsFor(initial);
+            this.table = new long[slots * 2];
+            this.mask = slots - 1;
+        }
+
+        boolean add(long msb, long lsb, int hash, long now, long expiredBefore) {
+            // Evict from the head of the ring while expired
+            while (count > 0 && ring[head * 3 + 2] < expiredBefore) {
+                evictHead();
+            }
+
+            int slot = hash & mask;
+            while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+                if (table[slot * 2] == msb && table[slot * 2 + 1] == lsb) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if (count == capacity) {
+                evictHead();
+                // The table changed; find the insertion slot again
+                slot = hash & mask;
+                while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+            } else if (count == ring.length / 3) {
+                grow();
+                slot = hash & mask;
+                while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+            }
+
+            table[slot * 2] = msb;
+            table[slot * 2 + 1] = lsb;
+
+            int tail = (head + count) % (ring.length / 3);
+            ring[tail * 3] = msb;
+            ring[tail * 3 + 1] = lsb;
+            ring[tail * 3 + 2] = now;
+            count++;
+            return true;
+        }
+
+        private void evictHead() {
+            long msb = ring[head * 3];
+            long lsb = ring[head * 3 + 1];
+            head = (head + 1) % (ring.length / 3);
+            count--;
+            if (msb != 0 || lsb != 0) {
+                remove(msb, lsb);
+            } else {
+                forgotten--;
+            }
+        }
+
+        /**
+         * Remove a key from the table and blank its ring entry, so evicting
+         * that entry later cannot remove the key when it is added again. The
+         * entry is searched from the newest end, where forgotten keys
+         * (released claims) normally are. The newest entry is dropped from the
+         * ring instead.
+         */
+        void forget(long msb, long lsb) {
+            int slots = ring.length / 3;
+            for (int i = count - 1; i >= 0; i--) {
+                int entry = (head + i) % slots;
+                if (ring[entry * 3] == msb && ring[entry * 3 + 1] == lsb) {
+                    ring[entry * 3] = 0;
+                    ring[entry * 3 + 1] = 0;
+                    if (i == count - 1) {
+                        count--;
+                    } else {
+                        forgotten++;
+                    }
+                    remove(msb, lsb);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Remove a key from the table with backward-shift deletion, so no
+         * tombstones are needed.
+         */
+        private void remove(long msb, long lsb) {
+            int slot = (int) mix(msb, lsb) & mask;
+            while (table[slot * 2] != msb || table[slot * 2 + 1] != lsb) {
+                if (table[slot * 2] == 0 && table[slot * 2 + 1] == 0) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            int gap = slot;
+            int next = gap;
+            while (true) {
+                next = (next + 1) & mask;
+                long nextMsb = table[next * 2];
+                long nextLsb = table[next * 2 + 1];
+                if (nextMsb == 0 && nextLsb == 0) {
+                    break;
+                }
+                int home = (int) mix(nextMsb, nextLsb) & mask;
+                // Move the entry into the gap unless its home lies cyclically in (gap, next]
+                boolean homeInRange = gap <= next
+                        ? gap < home && home <= next
+                        : gap < home || home <= next;
+                if (!homeInRange) {
+                    table[gap * 2] = nextMsb;
+                    table[gap * 2 + 1] = nextLsb;
+                    gap = next;
+                }
+            }
+            table[gap * 2] = 0;
+            table[gap * 2 + 1] = 0;
+        }
+
+        private void grow() {
+            int oldRingSlots = ring.length / 3;
+            int newRingSlots = Math.min(capacity, oldRingSlots * 2);
+
+            // Forgotten entries are left behind
+            long[] newRing = new long[newRingSlots * 3];
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int entry = ((head + i) % oldRingSlots) * 3;
+                if (ring[entry] != 0 || ring[entry + 1] != 0) {
+                    System.arraycopy(ring, entry, newRing, kept * 3, 3);
+                    kept++;
+                }
+            }
+            ring = newRing;
+            head = 0;
+            count = kept;
+            forgotten = 0;
+
+            int slots = tableSlotsFor(newRingSlots);
+            table = new long[slots * 2];
+            mask = slots - 1;
+            for (int i = 0; i < count; i++) {
+                long msb = ring[i * 3];
+                long lsb = ring[i * 3 + 1];
+                int slot = (int) mix(msb, lsb) & mask;
+                while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot * 2] = msb;
+                table[slot * 2 + 1] = lsb;
+            }
+        }
+
+        /** Power-of-two slot count keeping the load factor at or below 1/2. */
+        private static int tableSlotsFor(int entries) {
+            return Integer.highestOneBit(Math.max(2, entries) * 2 - 1) * 2;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.performativ.plugin;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity ring of received events, with retention by count and by age.
+ *
+ * <p>All slots are allocated up front as parallel arrays, so an append only
+ * stores a {@link WebhookEvent} reference and a timestamp into an existing
+ * slot and allocates nothing.
+ * Once the ring is full each append overwrites the oldest event. Events older
+ * than the maximum age are dropped as well, lazily, as later appends and
+ * reads pass over them. Both kinds of eviction are counted.
+ *
+ * <p>Events are numbered with a sequence number starting at 1 ({@code seq});
+ * event {@code seq} lives in slot {@code (seq - 1) % capacity}. Each slot also
+ * records the {@code seq} it holds, which doubles as a per-slot seqlock: a
+ * writer marks the slot as {@code -seq} while it stores the event and sets
+ * {@code seq} when it is done, and a reader only accepts an event read between
+ * two identical observations of the expected {@code seq}. Like
+ * {@link AppendOnlyLog}, only the gap-free prefix of completed appends is
+ * published to readers.
+ */
+public final class EventRingBuffer {
+
+    private final int capacity;
+    private final long maxAgeMillis;
+
+    /** {@code seq} held by each slot, {@code -seq} while being written, 0 when never used. */
+    private final AtomicLongArray slotSeqs;
+    private final AtomicLongArray receivedAt;
+    private final AtomicReferenceArray<WebhookEvent> events;
+
+    /** Last {@code seq} handed out to a writer. */
+    private final AtomicLong reserved = new AtomicLong();
+
+    /** Events up to this {@code seq} are stored and visible to readers. */
+    private final AtomicLong published = new AtomicLong();
+
+    /** Oldest {@code seq} not yet evicted. */
+    private final AtomicLong head = new AtomicLong(1);
+
+    private final AtomicLong evictedByCount = new AtomicLong();
+    private final AtomicLong evictedByAge = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of events retained
+     * @param maxAge   how long an event is retained, or {@link Duration#ZERO} for no limit
+     */
+    public EventRingBuffer(int capacity, Duration maxAge) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.maxAgeMillis = maxAge.isZero() ? Long.MAX_VALUE : maxAge.toMillis();
+        this.slotSeqs = new AtomicLongArray(capacity);
+        this.receivedAt = new AtomicLongArray(capacity);
+        this.events = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Append an event, evicting the oldest one if the ring is full.
+     *
+     * @return the event's {@code seq}
+     */
+    public long append(WebhookEvent event) {
+        long now = System.currentTimeMillis();
+        long seq = reserved.incrementAndGet();
+        int slot = slot(seq);
+
+        // Wait for the writer of the previous lap, if it is somehow still busy with this slot
+        long previous = seq > capacity ? seq - capacity : 0;
+        while (!slotSeqs.compareAndSet(slot, previous, -seq)) {
+            Thread.onSpinWait();
+        }
+        // Release stores suffice: a reader that sees any of them also sees the -seq marker
+        events.setRelease(slot, event);
+        receivedAt.setRelease(slot, now);
+        slotSeqs.setRelease(slot, seq);
+
+        if (previous > 0) {
+            long oldHead = head.getAndAccumulate(previous + 1, Math::max);
+            if (oldHead <= previous) {
+                evictedByCount.addAndGet(previous + 1 - oldHead);
+            }
+        }
+        publish();
+        expire(now);
+        return seq;
+    }
+
+    /**
+     * The event with a given {@code seq}, or {@code null} if it has been
+     * evicted, has expired or is not published yet.
+     */
+    public WebhookEvent get(long seq) {
+        if (seq < head.get() || seq > published.get()) {
+            return null;
+        }
+        int slot = slot(seq);
+        if (slotSeqs.get(slot) != seq) {
+            return null;
+        }
+        WebhookEvent event = events.get(slot);
+        long at = receivedAt.get(slot);
+        if (slotSeqs.get(slot) != seq || isExpired(at, System.currentTimeMillis())) {
+            return null;
+        }
+        return event;
+    }
+
+    /** Oldest retained {@code seq}; greater than {@link #lastSeq()} when empty. */
+    public long firstSeq() {
+        expire(System.currentTimeMillis());
+        return head.get();
+    }
+
+    /** Newest published {@code seq}, 0 before the first event. */
+    public long lastSeq() {
+        return published.get();
+    }
+
+    /** Maximum number of events retained. */
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Events overwritten because the ring was full. */
+    public long evictedByCount() {
+        return evictedByCount.get();
+    }
+
+    /** Events dropped because they were older than the maximum age. */
+    public long evictedByAge() {
+        return evictedByAge.get();
+    }
+
+    /** Advance the head past events that have exceeded the maximum age. */
+    private void expire(long now) {
+        if (maxAgeMillis == Long.MAX_VALUE) {
+            return;
+        }
+        long seq = head.get();
+        while (seq <= published.get()) {
+            int slot = slot(seq);
+            if (slotSeqs.get(slot) != seq || !isExpired(receivedAt.get(slot), now)) {
+                // Not expired, or already overwritten (and counted) by a newer lap
+                return;
+            }
+            if (head.compareAndSet(seq, seq + 1)) {
+                evictedByAge.incrementAndGet();
+            }
+            seq = head.get();
+        }
+    }
+
+    /** Advance the published {@code seq} over every completed append. */
+    private void publish() {
+        long last = published.get();
+        while (last < reserved.get()) {
+            long next = last + 1;
+            long held = slotSeqs.get(slot(next));
+            // Done if the slot holds next, or a later lap already started on it
+            if (held < next && -held <= next) {
+                return;
+            }
+            published.compareAndSet(last, next);
+            last = published.get();
+        }
+    }
+
+    private boolean isExpired(long receivedAtMillis, long now) {
+        return now - receivedAtMillis > maxAgeMillis;
+    }
+
+    private int slot(long seq) {
+        return (int) ((seq - 1) % capacity);
+    }
+}
@@ -0,0 +1,598 @@
+package com.performativ.plugin;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * In-memory store of received events behind {@code GET /events}, indexed by
+ * entity type, event type and {@code (entity, entity_id)}.
+ *
+ * <p>Events are stored as compact {@link WebhookEvent} records. Every event
+ * gets a {@code seq}, a sequence number increasing in arrival order, which
+ * doubles as a stable cursor for paging. A store replacing a cleared one
+ * continues from the last {@code seq} of the old one, so a cursor never points
+ * at a different event after a clear. Events are kept either in an
+ * unbounded {@link AppendOnlyLog} or, when a capacity is set, in an
+ * {@link EventRingBuffer} that evicts by count and by age so the heap stays
+ * flat no matter how long the receiver runs.
+ *
+ * <p>Each index maps a key to the ascending list of {@code seq}s of matching
+ * events (a posting list), so a filtered query reads only the events with the
+ * most selective key instead of scanning the store, and a query for events
+ * {@code after} a given {@code seq} starts with a binary search. Matches are
+ * read from the posting list in small chunks as the result stream is
+ * consumed, so exporting many events takes constant memory. Known entity
+ * and event types are keyed by enum and numeric entity IDs by their
+ * {@code long} value; only values without a compact form are keyed by text.
+ * Indexes are maintained in {@code seq} order by whichever thread holds the
+ * index lock: a writer indexes everything published so far if the lock is
+ * free, and otherwise leaves it to the current holder. Queries always catch up
+ * first, so they see every event published before the query started. Writers
+ * therefore never wait on each other. In ring mode the same catch-up drops
+ * evicted events from the posting lists, so the indexes are bounded too, and
+ * once the posting lists have reached their working size neither appending
+ * nor indexing allocates.
+ */
+public final class EventStore {
+
+    /** {@code seq}s copied out of a posting list per lock acquisition while a query is consumed. */
+    private static final int POSTINGS_CHUNK = 256;
+
+    /**
+     * {@code seq} of the event before the first one appended here. Storage
+     * numbers events from 1, so this is added to every {@code seq} handed out.
+     */
+    private final long seqBase;
+
+    /** Unbounded storage, or {@code null} in ring mode. */
+    private final AppendOnlyLog<WebhookEvent> log;
+
+    /** Bounded storage, or {@code null} in unbounded mode. */
+    private final EventRingBuffer ring;
+
+    final ReentrantLock indexLock = new ReentrantLock();
+
+    // Guarded by indexLock. OTHER types are indexed by their text instead.
+    private final Map<WebhookEvent.Entity, SeqList> byEntity = new EnumMap<>(WebhookEvent.Entity.class);
+    private final Map<String, SeqList> byOtherEntity = new HashMap<>();
+    private final Map<WebhookEvent.Event, SeqList> byEvent = new EnumMap<>(WebhookEvent.Event.class);
+    private final Map<String, SeqList> byOtherEvent = new HashMap<>();
+    /** By entity name, then entity ID. */
+    private final Map<String, EntityIdIndex> byEntityId = new HashMap<>();
+
+    /**
+     * Ring mode: the posting lists each indexed {@code seq} was added to, three
+     * per ring slot, so evicted events can be removed from them. Guarded by
+     * {@link #indexLock}.
+     */
+    private final SeqList[] postingsBySlot;
+
+    /**
+     * Ring mode: the {@code seq} whose posting lists are recorded in each slot
+     * of {@link #postingsBySlot}, or 0. When indexing falls more than the
+     * capacity behind, a slot already belongs to a newer event by the time an
+     * older {@code seq} mapping to it is pruned. Guarded by {@link #indexLock}.
+     */
+    private final long[] slotOwners;
+
+    /** Events up to this {@code seq} are in every index. Guarded by {@link #indexLock}. */
+    private long indexed;
+
+    /** Events below this {@code seq} have been removed from the indexes. Guarded by {@link #indexLock}. */
+    private long pruned = 1;
+
+    /** An unbounded store. */
+    public EventStore() {
+        this(0);
+    }
+
+    /**
+     * An unbounded store numbering events from {@code seqBase + 1}.
+     *
+     * @param seqBase the last {@code seq} of the store this one replaces, or 0
+     */
+    public EventStore(long seqBase) {
+        this.seqBase = seqBase;
+        this.log = new AppendOnlyLog<>();
+        this.ring = null;
+        this.postingsBySlot = null;
+        this.slotOwners = null;
+    }
+
+    /**
+     * A store keeping at most {@code capacity} events, each for at most {@code maxAge}.
+     *
+     * @param capacity maximum number of events retained
+     * @param maxAge   how long an event is retained, or {@link Duration#ZERO} for no limit
+     */
+    public EventStore(int capacity, Duration maxAge) {
+        this(capacity, maxAge, 0);
+    }
+
+    /**
+     * A bounded store numbering events from {@code seqBase + 1}.
+     *
+     * @param capacity maximum number of events retained
+     * @param maxAge   how long an event is retained, or {@link Duration#ZERO} for no limit
+     * @param seqBase  the last {@code seq} of the store this one replaces, or 0
+     */
+    public EventStore(int capacity, Duration maxAge, long seqBase) {
+        this.seqBase = seqBase;
+        this.log = null;
+        this.ring = new EventRingBuffer(capacity, maxAge);
+        this.postingsBySlot = new SeqList[capacity * 3];
+        this.slotOwners = new long[capacity];
+    }
+
+    /** Append an event, assigning the next {@code seq}. */
+    public void append(WebhookEvent event) {
+        if (ring != null) {
+            ring.append(event);
+        } else {
+            log.append(event);
+        }
+        if (indexLock.tryLock()) {
+            try {
+                catchUp();
+            } finally {
+                indexLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Events matching every non-null filter, in arrival order, in the form
+     * returned by {@code GET /events}. The stream is lazy, so it can be written
+     * out without collecting it first.
+     *
+     * @param entity   entity type, or {@code null} for any
+     * @param event    event type, or {@code null} for any
+     * @param entityId entity ID, or {@code null} for any; only indexed together with {@code entity}
+     * @param after    only events with a greater {@code seq} (0 for all)
+     * @param limit    maximum number of events returned
+     */
+    public Stream<Map<String, String>> query(String entity, String event, String entityId, long after, long limit) {
+        // Convert the filters once, so matching compares enums and longs
+        WebhookEvent.Entity entityType = entity == null ? null : WebhookEvent.Entity.fromWireName(entity);
+        WebhookEvent.Event eventType = event == null ? null : WebhookEvent.Event.fromWireName(event);
+        long id = entityId == null ? -1 : WebhookEvent.parseEntityId(entityId);
+        // Cursors from before a clear are older than everything stored here
+        long storedAfter = Math.max(0, after - seqBase);
+
+        LongStream seqs;
+        if (entity == null && event == null) {
+            // No filter, or entity_id alone which is not indexed: walk the store
+            seqs = LongStream.rangeClosed(Math.max(storedAfter + 1, firstStored()), lastStored());
+        } else {
+            indexLock.lock();
+            try {
+                catchUp();
+                SeqList candidates;
+                if (entity != null && entityId != null) {
+                    EntityIdIndex forEntity = byEntityId.get(entity);
+                    candidates = forEntity == null ? null : forEntity.get(id, entityId);
+                } else if (entity != null && event != null) {
+                    candidates = smaller(entityPostings(entityType, entity), eventPostings(eventType, event));
+                } else if (entity != null) {
+                    candidates = entityPostings(entityType, entity);
+                } else {
+                    candidates = eventPostings(eventType, event);
+                }
+                seqs = candidates == null
+                        ? LongStream.empty()
+                        : StreamSupport.longStream(new Postings(candidates, storedAfter, indexed), false);
+            } finally {
+                indexLock.unlock();
+            }
+        }
+
+        return seqs
+                .mapToObj(seq -> {
+                    WebhookEvent e = get(seq);
+                    if (e == null
+                            || (entity != null && !e.isEntity(entityType, entity))
+                            || (event != null && !e.isEvent(eventType, event))
+                            || (entityId != null && !e.hasEntityId(id, entityId))) {
+                        return null;
+                    }
+                    return e.toMap(seqBase + seq);
+                })
+                .filter(Objects::nonNull)
+                .limit(limit);
+    }
+
+    /**
+     * The {@code seq}s of a posting list between two bounds, copied out a chunk
+     * at a time under {@link #indexLock} as they are consumed. Each chunk
+     * searches for the {@code seq}s after the last one returned, so the list
+     * may grow or lose evicted entries in between.
+     */
+    private final class Postings extends Spliterators.AbstractLongSpliterator {
+        private final SeqList list;
+        private final long upTo;
+        private final long[] chunk = new long[POSTINGS_CHUNK];
+        private long cursor;
+        private int position;
+        private int count;
+
+        /** The {@code seq}s of {@code list} greater than {@code after} and at most {@code upTo}. */
+        Postings(SeqList list, long after, long upTo) {
+            super(Long.MAX_VALUE, ORDERED | DISTINCT | NONNULL);
+            this.list = list;
+            this.cursor = after;
+            this.upTo = upTo;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (position == count) {
+                if (cursor >= upTo) {
+                    return false;
+                }
+                indexLock.lock();
+                try {
+                    count = list.copyAfter(cursor, upTo, chunk);
+                } finally {
+                    indexLock.unlock();
+                }
+                position = 0;
+                if (count == 0) {
+                    cursor = upTo;
+                    return false;
+                }
+                cursor = chunk[count - 1];
+            }
+            action.accept(chunk[position++]);
+            return true;
+        }
+    }
+
+    /** Number of events currently retained. */
+    public long size() {
+        return Math.max(0, lastStored() - firstStored() + 1);
+    }
+
+    /** The last {@code seq} assigned, or the base {@code seq} when nothing was appended yet. */
+    public long lastSeq() {
+        return seqBase + lastStored();
+    }
+
+    /** Maximum number of events retained, or 0 when unbounded. */
+    public int capacity() {
+        return ring == null ? 0 : ring.capacity();
+    }
+
+    /** Events evicted because the store was full. */
+    public long evictedByCount() {
+        return ring == null ? 0 : ring.evictedByCount();
+    }
+
+    /** Events evicted because they exceeded the maximum age. */
+    public long evictedByAge() {
+        return ring == null ? 0 : ring.evictedByAge();
+    }
+
+    private WebhookEvent get(long seq) {
+        if (ring != null) {
+            return ring.get(seq);
+        }
+        return seq >= 1 && seq <= log.size() ? log.get((int) (seq - 1)) : null;
+    }
+
+    private long firstStored() {
+        return ring == null ? 1 : ring.firstSeq();
+    }
+
+    private long lastStored() {
+        return ring == null ? log.size() : ring.lastSeq();
+    }
+
+    /**
+     * Drop evicted events from the indexes and index every event published
+     * since the last catch-up. Caller holds {@link #indexLock}.
+     */
+    private void catchUp() {
+        long last = lastStored();
+        if (ring != null) {
+            long retainedFrom = Math.max(ring.firstSeq(), last - ring.capacity() + 1);
+            for (; pruned < retainedFrom; pruned++) {
+                int slot = slot(pruned);
+                if (slotOwners[slot] != pruned) {
+                    // Evicted before it was indexed, or the slot belongs to a newer event
+                    continue;
+                }
+                slotOwners[slot] = 0;
+                int base = slot * 3;
+                for (int i = 0; i < 3; i++) {
+                    SeqList postings = postingsBySlot[base + i];
+                    if (postings != null) {
+                        postingsBySlot[base + i] = null;
+                        postings.removeFirst(pruned);
+                        if (postings.isEmpty()) {
+                            postings.unregister();
+                        }
+                    }
+                }
+            }
+        }
+
+        for (long seq = indexed + 1; seq <= last; seq++) {
+            WebhookEvent e = get(seq);
+            if (e == null) {
+                // Already evicted again
+                continue;
+            }
+            SeqList forEntity = e.entity() != WebhookEvent.Entity.OTHER
+                    ? index(byEntity, e.entity(), seq)
+                    : index(byOtherEntity, e.entityName(), seq);
+            SeqList forEvent = e.event() != WebhookEvent.Event.OTHER
+                    ? index(byEvent, e.event(), seq)
+                    : index(byOtherEvent, e.eventName(), seq);
+            String entityName = e.entityName();
+            EntityIdIndex entityIds = byEntityId.get(entityName);
+            if (entityIds == null) {
+                entityIds = new EntityIdIndex();
+                byEntityId.put(entityName, entityIds);
+            }
+            SeqList forEntityId = entityIds.add(e, seq);
+            if (ring != null) {
+                slotOwners[slot(seq)] = seq;
+                int base = slot(seq) * 3;
+                postingsBySlot[base] = forEntity;
+                postingsBySlot[base + 1] = forEvent;
+                postingsBySlot[base + 2] = forEntityId;
+            }
+        }
+        indexed = Math.max(indexed, last);
+    }
+
+    /** Total length of all posting lists. */
+    long postingCount() {
+        indexLock.lock();
+        try {
+            long count = 0;
+            for (Map<?, SeqList> index : List.of(byEntity, byOtherEntity, byEvent, byOtherEvent)) {
+                for (SeqList postings : index.values()) {
+                    count += postings.size();
+                }
+            }
+            for (EntityIdIndex entityIds : byEntityId.values()) {
+                for (SeqList postings : entityIds.other.values()) {
+                    count += postings.size();
+                }
+                for (SeqList postings : entityIds.numeric.values) {
+                    if (postings != null) {
+                        count += postings.size();
+                    }
+                }
+            }
+            return count;
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    private SeqList entityPostings(WebhookEvent.Entity type, String name) {
+        return type != WebhookEvent.Entity.OTHER ? byEntity.get(type) : byOtherEntity.get(name);
+    }
+
+    private SeqList eventPostings(WebhookEvent.Event type, String name) {
+        return type != WebhookEvent.Event.OTHER ? byEvent.get(type) : byOtherEvent.get(name);
+    }
+
+    private static <K> SeqList index(Map<K, SeqList> index, K key, long seq) {
+        SeqList postings = index.get(key);
+        if (postings == null) {
+            postings = new SeqList(index, key, 0);
+            index.put(key, postings);
+        }
+        postings.add(seq);
+        return postings;
+    }
+
+    private static SeqList smaller(SeqList a, SeqList b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        return a.size() <= b.size() ? a : b;
+    }
+
+    private int slot(long seq) {
+        return (int) ((seq - 1) % ring.capacity());
+    }
+
+    /**
+     * Ascending list of {@code seq}s for one index key, as a growable array with
+     * removal from the front. Guarded by {@link #indexLock}.
+     */
+    private static final class SeqList {
+        /** The {@link Map} or {@link LongMap} this list is registered in. */
+        final Object index;
+        final Object key;
+        final long longKey;
+
+        long[] seqs = new long[4];
+        int start;
+        int end;
+
+        SeqList(Object index, Object key, long longKey) {
+            this.index = index;
+            this.key = key;
+            this.longKey = longKey;
+        }
+
+        void add(long seq) {
+            if (end == seqs.length) {
+                int size = end - start;
+                long[] grown = size * 2 > seqs.length ? new long[seqs.length * 2] : seqs;
+                System.arraycopy(seqs, start, grown, 0, size);
+                seqs = grown;
+                start = 0;
+                end = size;
+            }
+            seqs[end++] = seq;
+        }
+
+        void removeFirst(long seq) {
+            if (start < end && seqs[start] == seq) {
+                start++;
+            }
+        }
+
+        boolean isEmpty() {
+            return start == end;
+        }
+
+        int size() {
+            return end - start;
+        }
+
+        /** Remove this list, now empty, from its index. */
+        void unregister() {
+            if (index instanceof LongMap ids) {
+                ids.remove(longKey);
+            } else {
+                ((Map<?, ?>) index).remove(key);
+            }
+        }
+
+        /**
+         * Copy the {@code seq}s greater than {@code after} and at most
+         * {@code upTo} into {@code into}, as many as fit.
+         *
+         * @return the number copied
+         */
+        int copyAfter(long after, long upTo, long[] into) {
+            int low = start;
+            int high = end;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (seqs[mid] <= after) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int copied = 0;
+            while (low < end && copied < into.length && seqs[low] <= upTo) {
+                into[copied++] = seqs[low++];
+            }
+            return copied;
+        }
+    }
+
+    /**
+     * Posting lists of one entity type by entity ID: numeric IDs in a
+     * {@link LongMap}, without boxing, and anything else by its text.
+     */
+    private static final class EntityIdIndex {
+        final LongMap numeric = new LongMap();
+        final Map<String, SeqList> other = new HashMap<>();
+
+        SeqList add(WebhookEvent event, long seq) {
+            long id = event.entityId();
+            if (id < 0) {
+                return index(other, event.entityIdText(), seq);
+            }
+            SeqList postings = numeric.get(id);
+            if (postings == null) {
+                postings = new SeqList(numeric, null, id);
+                numeric.put(id, postings);
+            }
+            postings.add(seq);
+            return postings;
+        }
+
+        /** @param id {@code WebhookEvent.parseEntityId(text)} */
+        SeqList get(long id, String text) {
+            return id >= 0 ? numeric.get(id) : other.get(text);
+        }
+    }
+
+    /** Open-addressing {@code long -> SeqList} map with linear probing and backward-shift removal. */
+    private static final class LongMap {
+        long[] keys = new long[16];
+        SeqList[] values = new SeqList[16];
+        int size;
+
+        SeqList get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        void put(long key, SeqList value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (values[i] != null && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] == null) {
+                size++;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        void remove(long key) {
+            int mask = keys.length - 1;
+            int gap = hash(key) & mask;
+            while (true) {
+                if (values[gap] == null) {
+                    return;
+                }
+                if (keys[gap] == key) {
+                    break;
+                }
+                gap = (gap + 1) & mask;
+            }
+            size--;
+            // Shift later entries of the probe run back, so lookups need no tombstones
+            for (int i = (gap + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+                int home = hash(keys[i]) & mask;
+                boolean reachable = gap <= i ? gap < home && home <= i : gap < home || home <= i;
+                if (!reachable) {
+                    keys[gap] = keys[i];
+                    values[gap] = values[i];
+                    gap = i;
+                }
+            }
+            values[gap] = null;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            SeqList[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new SeqList[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
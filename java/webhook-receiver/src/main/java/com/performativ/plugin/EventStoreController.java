@@ -1,38 +1,101 @@
 package com.performativ.plugin;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Exposes received webhook events for integration testing.
  *
- * <p>{@code GET /events} returns all events received since startup.
- * {@code DELETE /events} clears the store (useful between test runs).
+ * <p>{@code GET /events} returns the events still in the store: the most
+ * recent ones received since startup or the last clear, up to the store's
+ * capacity. {@code DELETE /events} clears the store (useful between test runs).
+ * The {@code entity}, {@code event} and {@code entity_id} filters are served
+ * from indexes (see {@link EventStore}), so polling for a specific entity
+ * does not scan every stored event.
+ *
+ * <p>Every event carries a {@code seq}, increasing in arrival order and not
+ * reset by a clear, so a cursor never skips events appended after it. Pass the
+ * last {@code seq} seen as {@code after} (and optionally a {@code limit}) to
+ * page through the store or to fetch only events that arrived since the last
+ * call. With {@code Accept: application/x-ndjson} the events are streamed as
+ * one JSON object per line while they are read from the store, so exporting
+ * a large store takes constant memory on both ends.
+ *
+ * <p>The store keeps at most {@code webhook.events.capacity} events (oldest
+ * evicted first) and, if set, only those from the last
+ * {@code webhook.events.retention-minutes}. {@code GET /events/stats} reports
+ * how many were evicted.
  *
  * <p>This endpoint is intended for local development and testing only.
+ * {@link ReactiveWebhookHandler} serves it when the receiver runs on WebFlux.
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/events")
 public class EventStoreController {
 
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     private final WebhookEventProcessor processor;
+    private final ObjectMapper objectMapper;
 
-    public EventStoreController(WebhookEventProcessor processor) {
+    public EventStoreController(WebhookEventProcessor processor, ObjectMapper objectMapper) {
         this.processor = processor;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
     public List<Map<String, String>> getEvents(
             @RequestParam(required = false) String entity,
             @RequestParam(required = false) String event,
-            @RequestParam(name = "entity_id", required = false) String entityId) {
-        return processor.getEvents().stream()
-                .filter(e -> entity == null || entity.equals(e.get("entity")))
-                .filter(e -> event == null || event.equals(e.get("event")))
-                .filter(e -> entityId == null || entityId.equals(e.get("entity_id")))
-                .toList();
+            @RequestParam(name = "entity_id", required = false) String entityId,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(required = false) Integer limit) {
+        return query(entity, event, entityId, after, limit).toList();
+    }
+
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamEvents(
+            @RequestParam(required = false) String entity,
+            @RequestParam(required = false) String event,
+            @RequestParam(name = "entity_id", required = false) String entityId,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(required = false) Integer limit) {
+        Stream<Map<String, String>> events = query(entity, event, entityId, after, limit);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                for (Map<String, String> stored : (Iterable<Map<String, String>>) events::iterator) {
+                    objectMapper.writeValue(generator, stored);
+                    generator.writeRaw('\n');
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+
+    /**
+     * Number of stored events, the store's capacity (0 when unbounded) and how
+     * many events were evicted by count and by age since the last clear. When
+     * the staleness filter is on, also how many out-of-order events skipped
+     * the fetch since startup.
+     */
+    @GetMapping("/stats")
+    public Map<String, Long> getStats() {
+        return processor.getEventStoreStats();
     }
 
     @DeleteMapping
@@ -40,4 +103,12 @@ public class EventStoreController {
         processor.clearEvents();
         return Map.of("status", "ok");
     }
+
+    private Stream<Map<String, String>> query(String entity, String event, String entityId,
+                                              long after, Integer limit) {
+        if (limit != null && limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        }
+        return processor.findEvents(entity, event, entityId, after, limit == null ? Long.MAX_VALUE : limit);
+    }
 }
@@ -0,0 +1,63 @@
+package com.performativ.plugin;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * {@link IdempotencyStore} backed by an {@link EventIdWindow} that is
+ * persisted in a local {@link DurableEventIdLog}.
+ *
+ * <p>Completed claims survive restarts of this process, but are still not
+ * shared with other replicas. Give each replica its own directory. Claims are
+ * only written to the log once they are {@linkplain #complete completed}, so
+ * an event whose processing was cut short by a restart is processed again.
+ */
+public final class FileIdempotencyStore implements IdempotencyStore {
+
+    private final DurableEventIdLog durableLog;
+    private final EventIdWindow window;
+
+    /**
+     * @param directory           where the log segments are kept
+     * @param retention           how long an ID is remembered
+     * @param maxEntries          maximum number of IDs remembered
+     * @param fsyncIntervalMillis how often appended IDs are forced to disk
+     */
+    public FileIdempotencyStore(Path directory, Duration retention, int maxEntries,
+                                long fsyncIntervalMillis) throws IOException {
+        this.durableLog = new DurableEventIdLog(directory, retention.toMillis(), maxEntries, fsyncIntervalMillis);
+        this.window = new EventIdWindow(retention, maxEntries, durableLog);
+    }
+
+    @Override
+    public boolean[] claim(String namespace, List<String> eventIds) {
+        boolean[] claimed = new boolean[eventIds.size()];
+        for (int i = 0; i < claimed.length; i++) {
+            claimed[i] = window.add(namespace, eventIds.get(i));
+        }
+        return claimed;
+    }
+
+    @Override
+    public boolean claim(String namespace, String eventId) {
+        return window.add(namespace, eventId);
+    }
+
+    @Override
+    public void complete(String namespace, String eventId) {
+        window.persist(namespace, eventId);
+    }
+
+    @Override
+    public void release(String namespace, String eventId) {
+        window.remove(namespace, eventId);
+    }
+
+    /** Force appended IDs to disk. */
+    @Override
+    public void close() {
+        durableLog.close();
+    }
+}
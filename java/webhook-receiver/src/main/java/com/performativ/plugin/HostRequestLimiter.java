@@ -0,0 +1,72 @@
+package com.performativ.plugin;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the requests in flight to each host, so a burst of fetches cannot
+ * trip an API's rate limit.
+ *
+ * <p>Every host (and port) gets its own {@code maxInFlight} slots; a slow host
+ * does not use up the slots of another. A request waits for a slot for up to
+ * the acquire timeout and then fails, or, without a timeout, waits in arrival
+ * order for as long as it takes.
+ */
+public final class HostRequestLimiter {
+
+    /** A request to run once it has a slot. */
+    @FunctionalInterface
+    public interface Request<T> {
+        T send() throws IOException, InterruptedException;
+    }
+
+    private final int maxInFlight;
+    /** How long to wait for a slot, or {@code null} to wait without a timeout. */
+    private final Duration acquireTimeout;
+
+    private final ConcurrentHashMap<String, Semaphore> slots = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxInFlight    requests in flight per host
+     * @param acquireTimeout how long a request waits for a slot, or {@code null}
+     *                       to wait in arrival order without a timeout
+     */
+    public HostRequestLimiter(int maxInFlight, Duration acquireTimeout) {
+        this.maxInFlight = maxInFlight;
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    /**
+     * Send a request to the host of {@code url} once one of the host's slots
+     * is free.
+     *
+     * @param url     absolute URL the request goes to
+     * @param request sends the request
+     * @throws IOException if no slot became free within the acquire timeout,
+     *                     or the request failed
+     */
+    public <T> T send(String url, Request<T> request) throws IOException, InterruptedException {
+        String host = host(url);
+        Semaphore hostSlots = slots.computeIfAbsent(host, k -> new Semaphore(maxInFlight, acquireTimeout == null));
+        if (acquireTimeout == null) {
+            hostSlots.acquire();
+        } else if (!hostSlots.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new IOException("Timed out waiting for a request slot to " + host);
+        }
+        try {
+            return request.send();
+        } finally {
+            hostSlots.release();
+        }
+    }
+
+    private static String host(String url) {
+        String authority = URI.create(url).getAuthority();
+        return authority == null ? "" : authority.toLowerCase(Locale.ROOT);
+    }
+}
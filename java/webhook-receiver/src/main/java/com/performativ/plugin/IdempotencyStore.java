@@ -0,0 +1,78 @@
+package com.performativ.plugin;
+
+import java.util.List;
+
+/**
+ * Records which {@code event_id}s have been processed, so retries and replays
+ * are handled only once.
+ *
+ * <p>{@link #claim} is atomic per ID: when several callers (threads, or
+ * receiver replicas sharing a store) claim the same ID, exactly one of them
+ * gets {@code true}. Batching lets a store reach a remote backend once per
+ * batch instead of once per event.
+ *
+ * <p>A claim is provisional until the event has been processed: the claimer
+ * then either {@linkplain #complete completes} it, recording the ID as
+ * processed for the retention window, or {@linkplain #release releases} it
+ * after a failure, so that a retry or replay of the event is processed again
+ * rather than skipped as a duplicate.
+ *
+ * <p>Implementations:
+ * <ul>
+ *   <li>{@link InMemoryIdempotencyStore} — per process, forgotten on restart</li>
+ *   <li>{@link FileIdempotencyStore} — per process, kept across restarts in a local log</li>
+ *   <li>{@link JdbcIdempotencyStore} — shared by all replicas through a database</li>
+ * </ul>
+ */
+public interface IdempotencyStore extends AutoCloseable {
+
+    /**
+     * Longest {@code event_id}, in characters, that is claimed. Webhooks with a
+     * longer one are rejected before they reach a store, and
+     * {@link JdbcIdempotencyStore}, whose key column has this width, throws
+     * {@link IllegalArgumentException} for them.
+     */
+    int MAX_EVENT_ID_LENGTH = 255;
+
+    /**
+     * Claim a batch of event IDs.
+     *
+     * @param namespace idempotency namespace from {@link TenantRegistry#namespaceFor},
+     *                  or {@code null} for the shared namespace
+     * @param eventIds  the {@code event_id}s to claim (non-empty strings)
+     * @return for each ID, {@code true} if this call claimed it and the event
+     *         should be processed, {@code false} if it was already claimed
+     */
+    boolean[] claim(String namespace, List<String> eventIds);
+
+    /**
+     * Claim a single event ID.
+     *
+     * @return {@code true} if this call claimed it
+     */
+    default boolean claim(String namespace, String eventId) {
+        return claim(namespace, List.of(eventId))[0];
+    }
+
+    /**
+     * Claim an event ID again when replaying it after a restart. A claim this
+     * process made before it stopped, and never completed or released, does
+     * not count as a duplicate; a completed one does.
+     *
+     * @return {@code true} if the event should be processed
+     */
+    default boolean reclaim(String namespace, String eventId) {
+        return claim(namespace, eventId);
+    }
+
+    /** Record a claimed event ID as processed. */
+    void complete(String namespace, String eventId);
+
+    /** Forget a claimed event ID whose processing failed, so it can be claimed again. */
+    void release(String namespace, String eventId);
+
+    /** Release resources held by the store. */
+    @Override
+    default void close() {
+    }
+}
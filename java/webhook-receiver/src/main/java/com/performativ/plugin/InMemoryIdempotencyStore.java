@@ -0,0 +1,48 @@
+package com.performativ.plugin;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * {@link IdempotencyStore} backed by an in-memory {@link EventIdWindow}.
+ *
+ * <p>Fastest option, but claims are only visible to this process and are
+ * forgotten on restart. Suitable for a single replica, or when the platform's
+ * retries landing on another replica are handled downstream.
+ */
+public final class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private final EventIdWindow window;
+
+    /**
+     * @param retention  how long an ID is remembered
+     * @param maxEntries maximum number of IDs remembered
+     */
+    public InMemoryIdempotencyStore(Duration retention, int maxEntries) {
+        this.window = new EventIdWindow(retention, maxEntries);
+    }
+
+    @Override
+    public boolean[] claim(String namespace, List<String> eventIds) {
+        boolean[] claimed = new boolean[eventIds.size()];
+        for (int i = 0; i < claimed.length; i++) {
+            claimed[i] = window.add(namespace, eventIds.get(i));
+        }
+        return claimed;
+    }
+
+    @Override
+    public boolean claim(String namespace, String eventId) {
+        return window.add(namespace, eventId);
+    }
+
+    @Override
+    public void complete(String namespace, String eventId) {
+        // Already remembered by the claim
+    }
+
+    @Override
+    public void release(String namespace, String eventId) {
+        window.remove(namespace, eventId);
+    }
+}
@@ -0,0 +1,392 @@
+package com.performativ.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link IdempotencyStore} backed by a relational database, shared by every
+ * receiver replica that points at it.
+ *
+ * <p>Each claim is an {@code INSERT} into a table whose primary key is
+ * {@code (namespace, event_id)}; the database's uniqueness check decides which
+ * replica wins. A batch is inserted in one transaction with a single JDBC
+ * batch. If any ID in it was already claimed the transaction is rolled back and
+ * the batch is retried row by row, treating a unique-key violation as "already
+ * claimed": SQLState {@code 23505}, or {@code 23000} with the duplicate-key
+ * error code of MySQL/MariaDB (1062), Oracle (1) or SQL Server (2627, 2601).
+ * Other integrity errors are not mistaken for duplicates. Duplicates are the
+ * exception, so the common case costs one round trip per batch.
+ *
+ * <p>A claim is inserted with {@code completed = 0} and the claiming instance,
+ * and updated to 1 once the event has been processed; a released claim is
+ * deleted. A claim that is still incomplete after
+ * {@value #CLAIM_TIMEOUT_MINUTES} minutes is taken to be abandoned by a
+ * replica that stopped mid-way, and the next claim of the ID takes it over. A
+ * {@linkplain #reclaim replay} also takes over at once the incomplete claims
+ * of its own instance, which it made before it restarted, but never those of
+ * a replica that may still be processing the event. The instance ID must
+ * therefore be stable across restarts and unique among running replicas.
+ *
+ * <p>The table is created on startup if it does not exist:
+ * <pre>
+ * CREATE TABLE webhook_processed_events (
+ *     namespace    VARCHAR(255) NOT NULL,
+ *     event_id     VARCHAR(255) NOT NULL,
+ *     processed_at BIGINT       NOT NULL,
+ *     completed    SMALLINT     NOT NULL,
+ *     claimed_by   VARCHAR(255) NOT NULL,
+ *     PRIMARY KEY (namespace, event_id)
+ * )
+ * </pre>
+ * Event IDs longer than the key column are rejected with
+ * {@link IllegalArgumentException}. Rows older than the retention window are
+ * deleted once a minute by a background thread, so no claim waits for the
+ * purge. For large tables, add an index on {@code processed_at}.
+ *
+ * <p>Connections come from {@link DriverManager} and are kept in a small pool.
+ * The H2 driver is bundled (e.g. {@code jdbc:h2:./data/idempotency}); add the
+ * driver for your database to use anything else.
+ */
+public final class JdbcIdempotencyStore implements IdempotencyStore {
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcIdempotencyStore.class);
+
+    static final String TABLE = "webhook_processed_events";
+
+    /** Stored in place of the {@code null} (shared) namespace, as key columns cannot be null. */
+    private static final String SHARED_NAMESPACE = "";
+
+    private static final long PURGE_INTERVAL_MILLIS = 60_000;
+
+    /** How long an incomplete claim blocks other claims of its ID. */
+    static final long CLAIM_TIMEOUT_MINUTES = 15;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO " + TABLE + " (namespace, event_id, processed_at, completed, claimed_by)"
+                    + " VALUES (?, ?, ?, 0, ?)";
+    private static final String TAKE_OVER_SQL =
+            "UPDATE " + TABLE + " SET processed_at = ?, claimed_by = ?"
+                    + " WHERE namespace = ? AND event_id = ? AND completed = 0"
+                    + " AND (processed_at < ? OR claimed_by = ?)";
+    private static final String COMPLETE_SQL =
+            "UPDATE " + TABLE + " SET completed = 1, processed_at = ? WHERE namespace = ? AND event_id = ?";
+    private static final String RELEASE_SQL =
+            "DELETE FROM " + TABLE + " WHERE namespace = ? AND event_id = ? AND completed = 0";
+    private static final String PURGE_SQL =
+            "DELETE FROM " + TABLE + " WHERE processed_at < ?";
+
+    private final String url;
+    private final String user;
+    private final String password;
+    /** Recorded with each claim, so a replay recognises the claims of this instance. */
+    private final String instanceId;
+    private final long retentionMillis;
+
+    private final Semaphore permits;
+    private final ArrayBlockingQueue<Connection> idle;
+    private final ScheduledExecutorService purger;
+
+    /**
+     * @param url        JDBC URL
+     * @param user       database user (may be empty)
+     * @param password   database password (may be empty)
+     * @param instanceId identity of this replica, stable across restarts
+     * @param retention  how long claimed IDs are kept
+     * @param poolSize   maximum number of open connections
+     */
+    public JdbcIdempotencyStore(String url, String user, String password, String instanceId,
+                                Duration retention, int poolSize) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.instanceId = instanceId;
+        this.retentionMillis = retention.toMillis();
+        this.permits = new Semaphore(poolSize);
+        this.idle = new ArrayBlockingQueue<>(poolSize);
+
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                    + "namespace VARCHAR(255) NOT NULL, "
+                    + "event_id VARCHAR(" + MAX_EVENT_ID_LENGTH + ") NOT NULL, "
+                    + "processed_at BIGINT NOT NULL, "
+                    + "completed SMALLINT NOT NULL, "
+                    + "claimed_by VARCHAR(255) NOT NULL, "
+                    + "PRIMARY KEY (namespace, event_id))");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to initialise idempotency table in " + url, e);
+        }
+
+        this.purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idempotency-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purger.scheduleWithFixedDelay(this::purge, 0, PURGE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        log.info("Idempotency store using {} as instance {} (pool size {})", url, instanceId, poolSize);
+    }
+
+    @Override
+    public boolean[] claim(String namespace, List<String> eventIds) {
+        // A claim of this instance is another delivery being processed right now, not a leftover
+        return claim(namespace, eventIds, leaseExpiry(), null);
+    }
+
+    @Override
+    public boolean reclaim(String namespace, String eventId) {
+        return claim(namespace, List.of(eventId), leaseExpiry(), instanceId)[0];
+    }
+
+    private static long leaseExpiry() {
+        return System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(CLAIM_TIMEOUT_MINUTES);
+    }
+
+    @Override
+    public void complete(String namespace, String eventId) {
+        update(COMPLETE_SQL, System.currentTimeMillis(), keyOf(namespace), eventId);
+    }
+
+    @Override
+    public void release(String namespace, String eventId) {
+        update(RELEASE_SQL, keyOf(namespace), eventId);
+    }
+
+    /**
+     * @param abandonedBefore incomplete claims made before this time are taken over
+     * @param takeOverFrom    incomplete claims made by this instance are taken over, or {@code null}
+     */
+    private boolean[] claim(String namespace, List<String> eventIds, long abandonedBefore, String takeOverFrom) {
+        if (eventIds.isEmpty()) {
+            return new boolean[0];
+        }
+        for (String eventId : eventIds) {
+            if (eventId.length() > MAX_EVENT_ID_LENGTH) {
+                throw new IllegalArgumentException("Event ID is longer than " + MAX_EVENT_ID_LENGTH + " characters");
+            }
+        }
+        String key = keyOf(namespace);
+        long now = System.currentTimeMillis();
+
+        Connection connection = borrow();
+        boolean healthy = false;
+        try {
+            boolean[] claimed = insertBatch(connection, key, eventIds, now);
+            if (claimed == null) {
+                claimed = insertEach(connection, key, eventIds, now, abandonedBefore, takeOverFrom);
+            }
+            healthy = true;
+            return claimed;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Idempotency store unavailable", e);
+        } finally {
+            release(connection, healthy);
+        }
+    }
+
+    private void update(String sql, Object... parameters) {
+        Connection connection = borrow();
+        boolean healthy = false;
+        try (PreparedStatement update = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                update.setObject(i + 1, parameters[i]);
+            }
+            update.executeUpdate();
+            healthy = true;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Idempotency store unavailable", e);
+        } finally {
+            release(connection, healthy);
+        }
+    }
+
+    /** Stop purging and close all pooled connections. */
+    @Override
+    public void close() {
+        purger.shutdown();
+        try {
+            // A purge in progress returns its connection to the pool when done
+            purger.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Insert the whole batch in one transaction.
+     *
+     * @return all {@code true}, or {@code null} if some ID was already claimed
+     *         and the transaction was rolled back
+     */
+    private boolean[] insertBatch(Connection connection, String namespace,
+                                  List<String> eventIds, long now) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+            for (String eventId : eventIds) {
+                insert.setString(1, namespace);
+                insert.setString(2, eventId);
+                insert.setLong(3, now);
+                insert.setString(4, instanceId);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            connection.commit();
+            boolean[] claimed = new boolean[eventIds.size()];
+            Arrays.fill(claimed, true);
+            return claimed;
+        } catch (SQLException e) {
+            connection.rollback();
+            if (isUniqueViolation(e)) {
+                return null;
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Insert each ID on its own, so one duplicate does not fail the others. An
+     * ID that is already there is claimed if its claim was abandoned.
+     */
+    private boolean[] insertEach(Connection connection, String namespace, List<String> eventIds,
+                                 long now, long abandonedBefore, String takeOverFrom) throws SQLException {
+        boolean[] claimed = new boolean[eventIds.size()];
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_SQL);
+             PreparedStatement takeOver = connection.prepareStatement(TAKE_OVER_SQL)) {
+            for (int i = 0; i < claimed.length; i++) {
+                insert.setString(1, namespace);
+                insert.setString(2, eventIds.get(i));
+                insert.setLong(3, now);
+                insert.setString(4, instanceId);
+                try {
+                    insert.executeUpdate();
+                    claimed[i] = true;
+                } catch (SQLException e) {
+                    if (!isUniqueViolation(e)) {
+                        throw e;
+                    }
+                    takeOver.setLong(1, now);
+                    takeOver.setString(2, instanceId);
+                    takeOver.setString(3, namespace);
+                    takeOver.setString(4, eventIds.get(i));
+                    takeOver.setLong(5, abandonedBefore);
+                    if (takeOverFrom == null) {
+                        // Matches no row, so only the lease applies
+                        takeOver.setNull(6, Types.VARCHAR);
+                    } else {
+                        takeOver.setString(6, takeOverFrom);
+                    }
+                    claimed[i] = takeOver.executeUpdate() == 1;
+                }
+            }
+        }
+        return claimed;
+    }
+
+    /** Delete rows older than the retention window. Runs on {@link #purger}. */
+    private void purge() {
+        Connection connection;
+        try {
+            connection = borrow();
+        } catch (IllegalStateException e) {
+            log.warn("Failed to purge expired event IDs from {}", TABLE, e);
+            return;
+        }
+        boolean healthy = false;
+        try (PreparedStatement purge = connection.prepareStatement(PURGE_SQL)) {
+            purge.setLong(1, System.currentTimeMillis() - retentionMillis);
+            int purged = purge.executeUpdate();
+            if (purged > 0) {
+                log.debug("Purged {} expired event ID(s) from {}", purged, TABLE);
+            }
+            healthy = true;
+        } catch (SQLException e) {
+            // Retried on the next run; an exception here would stop the schedule
+            log.warn("Failed to purge expired event IDs from {}", TABLE, e);
+        } finally {
+            release(connection, healthy);
+        }
+    }
+
+    private static String keyOf(String namespace) {
+        return namespace == null ? SHARED_NAMESPACE : namespace;
+    }
+
+    private Connection borrow() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for an idempotency store connection", e);
+        }
+        Connection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        try {
+            return DriverManager.getConnection(url, user, password);
+        } catch (SQLException e) {
+            permits.release();
+            throw new IllegalStateException("Idempotency store unavailable", e);
+        }
+    }
+
+    private void release(Connection connection, boolean healthy) {
+        if (!healthy || !idle.offer(connection)) {
+            closeQuietly(connection);
+        }
+        permits.release();
+    }
+
+    /** Whether the exception, or one chained to it, reports a duplicate primary key. */
+    static boolean isUniqueViolation(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            if (isDuplicateKey(current)) {
+                return true;
+            }
+        }
+        return e instanceof BatchUpdateException && e.getCause() instanceof SQLException cause
+                && isUniqueViolation(cause);
+    }
+
+    private static boolean isDuplicateKey(SQLException e) {
+        String state = e.getSQLState();
+        if ("23505".equals(state)) {
+            // Standard: PostgreSQL, H2, Derby, DB2, HSQLDB
+            return true;
+        }
+        // Class 23 without a subclass: only the vendor code tells a duplicate from other integrity errors
+        return "23000".equals(state) && switch (e.getErrorCode()) {
+            case 1062, 1, 2627, 2601 -> true;
+            default -> false;
+        };
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.debug("Failed to close idempotency store connection", e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.performativ.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs events on one of N single-threaded lanes chosen by
+ * {@code (entity, entity_id)}, so events for one entity are processed one at
+ * a time in the order they were submitted while different entities are
+ * processed in parallel.
+ *
+ * <p>Each lane has a bounded queue. When an entity's lane is full,
+ * {@link #execute} blocks until there is room rather than dropping the event
+ * or running it out of order; the wait shows up as in-flight requests that
+ * admission control limits. An interrupt does not end the wait, so the event
+ * is never run out of order; the interrupt is restored once the event is
+ * queued. After {@link #close}, the event runs on the submitting thread so it
+ * is not lost.
+ *
+ * <p>Lanes can be virtual threads, so processing that blocks (database writes,
+ * API calls) does not hold a platform thread per lane.
+ */
+public final class PartitionedExecutor implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionedExecutor.class);
+
+    /** Tells a lane to stop once the events queued before it are done. */
+    private static final Runnable STOP = () -> { };
+
+    private final Lane[] lanes;
+    private volatile boolean closed;
+
+    /**
+     * @param partitions    number of lanes, typically the number of cores
+     * @param queueCapacity events waiting per lane
+     * @param virtual       whether lanes run on virtual threads
+     */
+    public PartitionedExecutor(int partitions, int queueCapacity, boolean virtual) {
+        Thread.Builder threads = virtual
+                ? Thread.ofVirtual().name("event-lane-", 1)
+                : Thread.ofPlatform().daemon().name("event-lane-", 1);
+        this.lanes = new Lane[partitions];
+        for (int i = 0; i < partitions; i++) {
+            lanes[i] = new Lane(threads, queueCapacity);
+        }
+    }
+
+    /** Run a task for an event after all tasks submitted earlier for the same entity. */
+    public void execute(WebhookEvent event, Runnable task) {
+        BlockingQueue<Runnable> queue = lanes[laneOf(event)].queue;
+        boolean interrupted = false;
+        try {
+            while (!closed) {
+                try {
+                    // Wakes up now and then to notice close()
+                    if (queue.offer(task, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        task.run();
+    }
+
+    /** Events waiting in all lanes. */
+    public int backlog() {
+        int backlog = 0;
+        for (Lane lane : lanes) {
+            backlog += lane.queue.size();
+        }
+        return backlog;
+    }
+
+    /** Finish the queued events, waiting up to 10 seconds, and stop the lanes. */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            for (Lane lane : lanes) {
+                // Queued behind the lane's events, so they are processed first
+                lane.queue.put(STOP);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        for (Lane lane : lanes) {
+            try {
+                lane.thread.join(Math.max(1, (deadline - System.nanoTime()) / 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int abandoned = backlog();
+        if (abandoned > 0) {
+            log.warn("Abandoning {} queued event(s) on shutdown", abandoned);
+        }
+    }
+
+    private int laneOf(WebhookEvent event) {
+        long h = event.entityId() >= 0
+                ? event.entityId() ^ ((long) event.entity().ordinal() << 58)
+                : (event.entityName() + ':' + event.entityIdText()).hashCode();
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(h ^ (h >>> 32), (long) lanes.length);
+    }
+
+    private static final class Lane implements Runnable {
+        final BlockingQueue<Runnable> queue;
+        final Thread thread;
+
+        Lane(Thread.Builder threads, int queueCapacity) {
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.thread = threads.start(this);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == STOP) {
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Event processing failed on {}", Thread.currentThread().getName(), e);
+                }
+            }
+        }
+    }
+}
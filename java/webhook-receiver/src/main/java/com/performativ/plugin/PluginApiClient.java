@@ -15,6 +15,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Base64;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * OAuth2 client_credentials API client for Performativ plugins.
@@ -35,10 +36,16 @@ import java.util.Base64;
  *
  * // Fetch a client by ID
  * JsonNode clientData = client.get("/api/v1/clients/123");
+ *
+ * // Or by the url field of a webhook payload
+ * JsonNode sameClient = client.get("https://api.acme.sandbox.onperformativ.com/api/v1/clients/123");
  * }</pre>
  *
  * <p>The client automatically requests and caches JWT access tokens,
- * refreshing them before expiry.
+ * refreshing them before expiry. It is safe to call from many threads,
+ * including virtual threads: while one thread refreshes the token, the others
+ * wait on a {@link ReentrantLock}, which unlike {@code synchronized} does not
+ * pin a virtual thread to its carrier thread during the token request.
  */
 public final class PluginApiClient {
 
@@ -49,6 +56,8 @@ public final class PluginApiClient {
      */
     private static final long TOKEN_REFRESH_BUFFER_SECONDS = 60;
 
+    private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
     private final String tokenEndpoint;
     private final String apiBaseUrl;
     private final String clientId;
@@ -58,6 +67,8 @@ public final class PluginApiClient {
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
 
+    /** Guards {@link #accessToken} and {@link #tokenExpiresAt}. */
+    private final ReentrantLock tokenLock = new ReentrantLock();
     private String accessToken;
     private Instant tokenExpiresAt = Instant.EPOCH;
 
@@ -84,20 +95,37 @@ public final class PluginApiClient {
     /**
      * Perform a GET request to the Performativ API.
      *
-     * @param path API path (e.g. "/api/v1/clients/123")
+     * @param path API path (e.g. "/api/v1/clients/123"), or an absolute URL
+     *             under the API base URL, such as the {@code url} of a webhook
      * @return parsed JSON response body
      * @throws IOException          if the request fails
      * @throws InterruptedException if the thread is interrupted
      */
     public JsonNode get(String path) throws IOException, InterruptedException {
+        return get(path, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * Perform a GET request to the Performativ API with a custom timeout.
+     *
+     * @param path    API path, or an absolute URL under the API base URL
+     * @param timeout how long to wait for the response
+     * @return parsed JSON response body
+     * @throws IllegalArgumentException if an absolute URL points outside the API,
+     *                                  which would leak the access token
+     * @throws IOException              if the request fails or times out
+     * @throws InterruptedException     if the thread is interrupted
+     */
+    public JsonNode get(String path, Duration timeout) throws IOException, InterruptedException {
+        URI uri = resolve(path);
         String token = getAccessToken();
 
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(apiBaseUrl + path))
+                .uri(uri)
                 .header("Authorization", "Bearer " + token)
                 .header("Accept", "application/json")
                 .GET()
-                .timeout(Duration.ofSeconds(30))
+                .timeout(timeout)
                 .build();
 
         HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
@@ -110,17 +138,42 @@ public final class PluginApiClient {
         return objectMapper.readTree(response.body());
     }
 
+    /** Base URL of the Performativ API, without a trailing slash. */
+    public String apiBaseUrl() {
+        return apiBaseUrl;
+    }
+
+    private URI resolve(String path) {
+        if (!path.startsWith("http://") && !path.startsWith("https://")) {
+            return URI.create(apiBaseUrl + path);
+        }
+        if (!path.startsWith(apiBaseUrl + "/")) {
+            throw new IllegalArgumentException("Refusing to send API credentials to " + path
+                    + ": not under " + apiBaseUrl);
+        }
+        return URI.create(path);
+    }
+
+    /** Get a valid access token, requesting a new one if needed. */
+    private String getAccessToken() throws IOException, InterruptedException {
+        tokenLock.lockInterruptibly();
+        try {
+            if (accessToken != null && Instant.now().isBefore(tokenExpiresAt)) {
+                return accessToken;
+            }
+            return requestAccessToken();
+        } finally {
+            tokenLock.unlock();
+        }
+    }
+
     /**
-     * Get a valid access token, requesting a new one if needed.
+     * Request a new access token. Caller holds {@link #tokenLock}.
      *
      * <p>Uses client_secret_basic: the Authorization header contains
      * {@code Basic base64(client_id:client_secret)}.
      */
-    private synchronized String getAccessToken() throws IOException, InterruptedException {
-        if (accessToken != null && Instant.now().isBefore(tokenExpiresAt)) {
-            return accessToken;
-        }
-
+    private String requestAccessToken() throws IOException, InterruptedException {
         log.info("Requesting new access token from {}", tokenEndpoint);
 
         // Build form body: grant_type=client_credentials&audience=backend-api
@@ -0,0 +1,313 @@
+package com.performativ.plugin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Reactive (WebFlux on Netty) counterpart of {@link WebhookController} and
+ * {@link EventStoreController}, with the same {@code /webhook} and
+ * {@code /events} contract. Routed by {@link ReactiveWebhookRoutes}.
+ *
+ * <p>The servlet receiver holds a request thread for the whole request. Here
+ * the body is aggregated without blocking, up to the same
+ * {@code webhook.max-body-size} as in the servlet receiver (not the codecs'
+ * 256 KB default), and signature verification,
+ * admission control and parsing run on the event loop, since they only use
+ * the CPU. Only work that may block moves to a bounded pool of processing
+ * threads: idempotency claims and event processing, and journal writes in
+ * async mode. Admission control counts a webhook as in flight from the moment
+ * it is handed to that pool until the work is done, so the
+ * {@code webhook.admission.max-in-flight} limit bounds the pool's backlog and
+ * overload is answered with 429 rather than queued. A full pool queue is
+ * answered with 429 too.
+ *
+ * <p>Work handed to the pool always runs to completion. If the request is
+ * cancelled meanwhile (e.g. the platform's client disconnects), only the
+ * response is dropped: the worker is never interrupted in the middle of a
+ * journal append, an idempotency claim or a lane hand-off, which would leave
+ * the event half processed.
+ *
+ * <p>{@code GET /events} queries take the event store's index lock, so they
+ * run on the {@code boundedElastic} scheduler rather than the event loop.
+ *
+ * <h3>Configuration</h3>
+ * <pre>
+ * SPRING_MAIN_WEB_APPLICATION_TYPE=reactive
+ * WEBHOOK_REACTIVE_WORKERS=16            # optional, threads for blocking work
+ * WEBHOOK_REACTIVE_QUEUE_CAPACITY=1000   # optional, tasks waiting for them
+ * WEBHOOK_MAX_BODY_SIZE=10MB             # optional, larger bodies get 413
+ * </pre>
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebhookHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveWebhookHandler.class);
+
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final TenantRegistry tenants;
+    private final ObjectMapper objectMapper;
+    private final WebhookEventProcessor processor;
+    private final WebhookIngestionQueue ingestionQueue;
+    private final WebhookAdmissionControl admissionControl;
+    private final int maxBodyBytes;
+
+    /** Runs the blocking parts of handling a webhook. */
+    private final ThreadPoolExecutor processing;
+
+    public ReactiveWebhookHandler(
+            TenantRegistry tenants,
+            ObjectMapper objectMapper,
+            WebhookEventProcessor processor,
+            WebhookIngestionQueue ingestionQueue,
+            WebhookAdmissionControl admissionControl,
+            @Value("${webhook.max-body-size:10MB}") DataSize maxBodySize,
+            @Value("${webhook.reactive.workers:16}") int workers,
+            @Value("${webhook.reactive.queue-capacity:1000}") int queueCapacity) {
+        this.tenants = tenants;
+        this.objectMapper = objectMapper;
+        this.processor = processor;
+        this.ingestionQueue = ingestionQueue;
+        this.admissionControl = admissionControl;
+        this.maxBodyBytes = (int) Math.min(Integer.MAX_VALUE, maxBodySize.toBytes());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.processing = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "webhook-process-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        log.info("Reactive webhook receiver enabled: workers={} queueCapacity={}", workers, queueCapacity);
+    }
+
+    /** POST /webhook, as {@link WebhookController#receiveWebhook}. */
+    public Mono<ServerResponse> receiveWebhook(ServerRequest request) {
+        HttpHeaders headers = request.headers().asHttpHeaders();
+        String signature = headers.getFirst("x-webhook-signature");
+        String tenant = headers.getFirst("x-tenant");
+        String apiDomain = headers.getFirst("x-api-domain");
+        return DataBufferUtils.join(request.body(BodyExtractors.toDataBuffers()), maxBodyBytes)
+                .map(ReactiveWebhookHandler::toBytes)
+                .defaultIfEmpty(NO_BODY)
+                .flatMap(body -> receive(body, signature, tenant, apiDomain))
+                .onErrorResume(DataBufferLimitException.class, e -> {
+                    log.warn("Webhook from tenant={} exceeds {} bytes", tenant, maxBodyBytes);
+                    return json(HttpStatus.PAYLOAD_TOO_LARGE, Map.of("error", "Payload too large"));
+                });
+    }
+
+    private static byte[] toBytes(DataBuffer buffer) {
+        try {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            return bytes;
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private Mono<ServerResponse> receive(byte[] body, String signature, String tenant, String apiDomain) {
+        // Step 1: Verify signature with the tenant's keys
+        if (!tenants.accepts(tenant)) {
+            log.warn("Webhook from unknown tenant={} rejected", tenant);
+            return json(HttpStatus.UNAUTHORIZED, Map.of("error", "Unknown tenant"));
+        }
+        SigningKeyRing signingKeys = tenants.keysFor(tenant);
+        if (signingKeys != null && !signingKeys.verify(body, signature)) {
+            log.warn("Invalid webhook signature from tenant={}", tenant);
+            return json(HttpStatus.UNAUTHORIZED, Map.of("error", "Invalid signature"));
+        }
+
+        // Admission control: shed load before doing any more work
+        long retryAfter = admissionControl.checkAdmission(
+                ingestionQueue.queueDepth(), ingestionQueue.capacity(),
+                ingestionQueue.queueDepth(tenant), ingestionQueue.laneCapacity());
+        if (retryAfter > 0) {
+            return tooManyRequests(retryAfter);
+        }
+
+        // Async mode: queue (and journal) the verified body, workers parse and process it
+        if (ingestionQueue.isEnabled()) {
+            Map<String, String> webhookHeaders = new LinkedHashMap<>();
+            putIfPresent(webhookHeaders, "x-tenant", tenant);
+            putIfPresent(webhookHeaders, "x-api-domain", apiDomain);
+            putIfPresent(webhookHeaders, "x-webhook-signature", signature);
+            Supplier<Boolean> offer = () -> ingestionQueue.offer(body, webhookHeaders, tenants.namespaceFor(tenant));
+            Mono<Boolean> queued = ingestionQueue.isJournaled()
+                    // Waits for an fsync, which must not block the event loop
+                    ? Mono.defer(() -> Mono.fromFuture(offload(offer), true))
+                    : Mono.fromSupplier(offer);
+            return queued
+                    .flatMap(ok -> ok
+                            ? json(HttpStatus.OK, Map.of("status", "ok", "message", "Queued"))
+                            : tooManyRequests(admissionControl.rejectQueueFull(ingestionQueue.queueDepth())))
+                    .onErrorResume(UncheckedIOException.class, e -> {
+                        // Not safely stored, so do not acknowledge: the platform will retry
+                        log.error("Failed to journal webhook from tenant={}", tenant, e);
+                        return json(HttpStatus.SERVICE_UNAVAILABLE, Map.of("error", "Webhook could not be stored"));
+                    })
+                    .onErrorResume(RejectedExecutionException.class,
+                            e -> tooManyRequests(admissionControl.rejectQueueFull(ingestionQueue.queueDepth())));
+        }
+
+        // Step 2: Parse payload
+        WebhookPayload payload;
+        try {
+            payload = WebhookPayload.parse(objectMapper, body);
+        } catch (Exception e) {
+            log.error("Failed to parse webhook payload", e);
+            return json(HttpStatus.BAD_REQUEST, Map.of("error", "Invalid payload"));
+        }
+
+        log.info("Webhook received: entity={} event={} entity_id={} event_id={} tenant={}",
+                payload.entity(), payload.event(), payload.entityId(), payload.eventId(), tenant);
+
+        // Step 3: Idempotency check + processing (shared with poller), off the event loop
+        return Mono.defer(() -> {
+                    long started = admissionControl.begin();
+                    CompletableFuture<Boolean> processed =
+                            offload(() -> processor.processIfNew(payload, tenants.namespaceFor(tenant)));
+                    processed.whenComplete((isNew, e) -> admissionControl.end(started));
+                    return Mono.fromFuture(processed, true);
+                })
+                .flatMap(isNew -> json(HttpStatus.OK, isNew
+                        ? Map.of("status", "ok")
+                        : Map.of("status", "ok", "message", "Already processed")))
+                .onErrorResume(RejectedExecutionException.class,
+                        e -> tooManyRequests(admissionControl.rejectQueueFull(0)));
+    }
+
+    /** GET /webhook/keys, as {@link SigningKeyController#signingKeyUsage}; routed only when enabled. */
+    public Mono<ServerResponse> signingKeyUsage(ServerRequest request) {
+        return ServerResponse.ok().bodyValue(SigningKeyController.describeKeyUsage(tenants));
+    }
+
+    /** GET /events as a JSON array. */
+    public Mono<ServerResponse> getEvents(ServerRequest request) {
+        return Mono.fromCallable(() -> query(request).toList())
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(events -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(events));
+    }
+
+    /**
+     * GET /events as {@code application/x-ndjson}, encoded while it is read
+     * from the store. The stream is both opened and read on
+     * {@code boundedElastic}, as reading it takes the index lock.
+     */
+    public Mono<ServerResponse> streamEvents(ServerRequest request) {
+        Flux<Map<String, String>> events = Flux.defer(() -> Flux.fromStream(query(request)))
+                .subscribeOn(Schedulers.boundedElastic());
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON)
+                .body(events, Map.class);
+    }
+
+    /** GET /events/stats, as {@link EventStoreController#getStats}. */
+    public Mono<ServerResponse> getStats(ServerRequest request) {
+        return ServerResponse.ok().bodyValue(processor.getEventStoreStats());
+    }
+
+    /** DELETE /events. */
+    public Mono<ServerResponse> clearEvents(ServerRequest request) {
+        processor.clearEvents();
+        return ServerResponse.ok().bodyValue(Map.of("status", "ok"));
+    }
+
+    /** Let work already handed to the processing pool finish, for up to 10 seconds. */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        processing.shutdown();
+        if (!processing.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Abandoning {} queued webhook(s) on shutdown", processing.shutdownNow().size());
+        }
+    }
+
+    /**
+     * Run blocking work on the processing pool. The result is bridged with
+     * {@code Mono.fromFuture(result, true)}, which does not cancel the future,
+     * so a cancelled request leaves the work running.
+     *
+     * @return the work's result, or failed with {@link RejectedExecutionException}
+     *         if the pool's queue is full
+     */
+    private <T> CompletableFuture<T> offload(Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, processing);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private Stream<Map<String, String>> query(ServerRequest request) {
+        long after = longParam(request, "after", 0);
+        long limit = longParam(request, "limit", Long.MAX_VALUE);
+        if (limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        }
+        return processor.findEvents(
+                request.queryParam("entity").orElse(null),
+                request.queryParam("event").orElse(null),
+                request.queryParam("entity_id").orElse(null),
+                after, limit);
+    }
+
+    private static long longParam(ServerRequest request, String name, long defaultValue) {
+        String value = request.queryParam(name).orElse(null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, name + " must be a number");
+        }
+    }
+
+    private static void putIfPresent(Map<String, String> headers, String name, String value) {
+        if (value != null) {
+            headers.put(name, value);
+        }
+    }
+
+    private static Mono<ServerResponse> json(HttpStatus status, Map<String, String> body) {
+        return ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON).bodyValue(body);
+    }
+
+    private static Mono<ServerResponse> tooManyRequests(long retryAfterSeconds) {
+        return ServerResponse.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("error", "Too many requests"));
+    }
+}
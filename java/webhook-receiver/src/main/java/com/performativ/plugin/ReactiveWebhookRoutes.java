@@ -0,0 +1,62 @@
+package com.performativ.plugin;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.RequestPredicate;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * Routes for the reactive receiver, active with
+ * {@code spring.main.web-application-type=reactive}.
+ *
+ * <p>Both web starters are on the classpath, so Spring Boot starts the
+ * servlet receiver by default. In reactive mode it would pick Tomcat as the
+ * server; the Netty factory declared here takes its place.
+ *
+ * <p>{@code GET /webhook/keys} is routed only with
+ * {@code webhook.keys-endpoint.enabled=true}, as in the servlet receiver
+ * (see {@link SigningKeyController}).
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebhookRoutes {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> webhookRoutes(
+            ReactiveWebhookHandler handler,
+            @Value("${webhook.keys-endpoint.enabled:false}") boolean keysEndpointEnabled) {
+        RouterFunctions.Builder routes = RouterFunctions.route()
+                .POST("/webhook", handler::receiveWebhook);
+        if (keysEndpointEnabled) {
+            routes.GET("/webhook/keys", handler::signingKeyUsage);
+        }
+        return routes
+                .GET("/events", acceptsNdjson(), handler::streamEvents)
+                .GET("/events", handler::getEvents)
+                .GET("/events/stats", handler::getStats)
+                .DELETE("/events", handler::clearEvents)
+                .build();
+    }
+
+    /**
+     * Requests that ask for NDJSON by name. Unlike {@code accept(...)}, this
+     * does not match {@code *}{@code /*}, which gets a JSON array as in the
+     * servlet receiver.
+     */
+    private static RequestPredicate acceptsNdjson() {
+        return RequestPredicates.headers(headers -> headers.accept().stream()
+                .anyMatch(type -> type.equalsTypeAndSubtype(MediaType.APPLICATION_NDJSON)));
+    }
+}
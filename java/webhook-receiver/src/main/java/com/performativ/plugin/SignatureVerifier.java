@@ -3,10 +3,11 @@ package com.performativ.plugin;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import java.util.HexFormat;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Verifies HMAC-SHA256 webhook signatures from Performativ.
@@ -20,18 +21,61 @@ import java.util.HexFormat;
  * SignatureVerifier verifier = new SignatureVerifier("your-signing-key");
  * boolean valid = verifier.verify(rawRequestBody, signatureHeader);
  * }</pre>
+ *
+ * <p>Instances are thread-safe. {@link Mac}s initialised with the signing key
+ * are kept in a small pool: a verification borrows one and returns it when
+ * done, so the provider lookup and key setup happen only when the pool is
+ * empty rather than once per webhook. {@link Mac#doFinal} resets the instance
+ * for the next use. The pool keeps at most two per core, as the HMAC work is
+ * CPU-bound and rarely runs on more threads than that at once; unlike a
+ * {@link ThreadLocal} it does not grow with the number of threads, which
+ * matters when every request has its own virtual thread.
+ *
+ * <p>Verification does not allocate once the pool is warm: the header is
+ * checked for length and hex characters before any HMAC work, the digest is
+ * written into a buffer pooled with the {@code Mac}, and the hex header is
+ * compared against it nibble by nibble in constant time.
  */
 public final class SignatureVerifier {
 
     private static final String HMAC_SHA256 = "HmacSHA256";
 
-    private final byte[] keyBytes;
+    /** HMAC-SHA256 digest length in bytes. */
+    private static final int DIGEST_LENGTH = 32;
+
+    /** Length of the hex-encoded signature header. */
+    private static final int SIGNATURE_LENGTH = DIGEST_LENGTH * 2;
+
+    /** Hex digit values indexed by ASCII code, {@code -1} for non-hex characters. */
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    /** Most initialised {@link Mac}s kept for reuse. */
+    private static final int MAX_POOLED = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final SecretKeySpec key;
+
+    private final ConcurrentLinkedQueue<MacState> pool = new ConcurrentLinkedQueue<>();
+    /** Approximate size of {@link #pool}, which is costly to count. */
+    private final AtomicInteger pooled = new AtomicInteger();
 
     /**
      * @param signingKey the webhook signing key provided when the plugin was activated
      */
     public SignatureVerifier(String signingKey) {
-        this.keyBytes = signingKey.getBytes(StandardCharsets.UTF_8);
+        this.key = new SecretKeySpec(signingKey.getBytes(StandardCharsets.UTF_8), HMAC_SHA256);
+        // Fail fast on an unusable key instead of on the first webhook
+        giveBack(new MacState(newMac()));
     }
 
     /**
@@ -48,23 +92,88 @@ public final class SignatureVerifier {
             return true;
         }
 
-        byte[] computed = computeHmac(payload);
-        byte[] expected = HexFormat.of().parseHex(signature);
+        // Reject malformed headers before spending any HMAC work on them
+        return isWellFormed(signature) && matches(payload, signature);
+    }
+
+    /**
+     * Compare a well-formed signature against the HMAC of the payload.
+     *
+     * @param signature a header that passed {@link #isWellFormed(String)}
+     */
+    boolean matches(byte[] payload, String signature) {
+        MacState state = borrow();
+        try {
+            state.mac.update(payload);
+            state.mac.doFinal(state.digest, 0);
+        } catch (GeneralSecurityException e) {
+            // Not returned to the pool, as its state is unknown
+            throw new IllegalStateException("HMAC-SHA256 computation failed", e);
+        }
 
-        // Constant-time comparison to prevent timing attacks
-        return MessageDigest.isEqual(computed, expected);
+        // Constant-time comparison to prevent timing attacks: no early exit
+        int diff = 0;
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int expected = (HEX_VALUES[signature.charAt(2 * i)] << 4)
+                    | HEX_VALUES[signature.charAt(2 * i + 1)];
+            diff |= (state.digest[i] & 0xff) ^ expected;
+        }
+        giveBack(state);
+        return diff == 0;
+    }
+
+    /**
+     * Whether the header is exactly 64 hex characters.
+     */
+    static boolean isWellFormed(String signature) {
+        if (signature.length() != SIGNATURE_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            char c = signature.charAt(i);
+            if (c >= HEX_VALUES.length || HEX_VALUES[c] < 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
      * Compute HMAC-SHA256 of the given payload.
      */
     private byte[] computeHmac(byte[] payload) {
+        MacState state = borrow();
+        byte[] hmac = state.mac.doFinal(payload);
+        giveBack(state);
+        return hmac;
+    }
+
+    /** Take a pooled {@link Mac}, or initialise a new one if none is free. */
+    private MacState borrow() {
+        MacState state = pool.poll();
+        if (state == null) {
+            return new MacState(newMac());
+        }
+        pooled.decrementAndGet();
+        return state;
+    }
+
+    /** Return a {@link Mac} after use; it is discarded if the pool is full. */
+    private void giveBack(MacState state) {
+        if (pooled.incrementAndGet() <= MAX_POOLED) {
+            pool.offer(state);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    private Mac newMac() {
         try {
             Mac mac = Mac.getInstance(HMAC_SHA256);
-            mac.init(new SecretKeySpec(keyBytes, HMAC_SHA256));
-            return mac.doFinal(payload);
-        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-            throw new IllegalStateException("HMAC-SHA256 computation failed", e);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 initialisation failed", e);
         }
     }
 
@@ -74,4 +183,16 @@ public final class SignatureVerifier {
     public String sign(byte[] payload) {
         return HexFormat.of().formatHex(computeHmac(payload));
     }
+
+    /**
+     * An initialised {@link Mac} and the buffer its digest is written to.
+     */
+    private static final class MacState {
+        final Mac mac;
+        final byte[] digest = new byte[DIGEST_LENGTH];
+
+        MacState(Mac mac) {
+            this.mac = mac;
+        }
+    }
 }
@@ -0,0 +1,62 @@
+package com.performativ.plugin;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reports signing-key usage, to tell when an old key can be retired after a
+ * rotation.
+ *
+ * <p>{@code GET /webhook/keys} is unauthenticated and lists the tenants and
+ * key fingerprints the receiver knows, so it is only served with
+ * {@code webhook.keys-endpoint.enabled=true}. Enable it where the receiver is
+ * not reachable from outside, or only for the duration of a rotation.
+ * {@link ReactiveWebhookHandler} serves it when the receiver runs on WebFlux.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "webhook.keys-endpoint.enabled", havingValue = "true")
+@RequestMapping("/webhook")
+public class SigningKeyController {
+
+    private final TenantRegistry tenants;
+
+    public SigningKeyController(TenantRegistry tenants) {
+        this.tenants = tenants;
+    }
+
+    /**
+     * GET /webhook/keys
+     *
+     * <p>Reports which signing keys are still matching traffic, per tenant
+     * ({@code "default"} for the shared keys), identified by fingerprint (never
+     * the key itself). Once an old key shows no recent hits after a rotation it
+     * can be removed from the configuration.
+     */
+    @GetMapping("/keys")
+    public List<Map<String, Object>> signingKeyUsage() {
+        return describeKeyUsage(tenants);
+    }
+
+    /** The {@code GET /webhook/keys} response, shared with {@link ReactiveWebhookHandler}. */
+    static List<Map<String, Object>> describeKeyUsage(TenantRegistry tenants) {
+        List<Map<String, Object>> keys = new ArrayList<>();
+        tenants.keyUsage().forEach((tenant, usages) -> {
+            for (SigningKeyRing.KeyUsage usage : usages) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("tenant", tenant);
+                entry.put("fingerprint", usage.fingerprint());
+                entry.put("hits", usage.hits());
+                entry.put("last_used_at", usage.lastUsedAt() == null ? null : usage.lastUsedAt().toString());
+                keys.add(entry);
+            }
+        });
+        return keys;
+    }
+}
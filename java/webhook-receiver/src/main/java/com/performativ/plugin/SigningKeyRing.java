@@ -0,0 +1,144 @@
+package com.performativ.plugin;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Verifies webhook signatures against a set of active signing keys.
+ *
+ * <p>Lets a signing key be rotated without a window of failed deliveries:
+ * configure the new key next to the old one, switch the key on the platform,
+ * and remove the old key once {@link #usage()} shows it no longer matches
+ * any traffic.
+ *
+ * <p>Each key has its own {@link SignatureVerifier} (and therefore its own
+ * pool of initialised MACs). The key that matched most recently is tried
+ * first, so in steady state a webhook still costs a single HMAC computation.
+ *
+ * <pre>{@code
+ * SigningKeyRing keys = new SigningKeyRing(List.of("old-key", "new-key"));
+ * boolean valid = keys.verify(rawRequestBody, signatureHeader);
+ * }</pre>
+ */
+public final class SigningKeyRing {
+
+    private final Key[] keys;
+
+    /** Index of the key that matched most recently. */
+    private volatile int preferred;
+
+    /**
+     * @param signingKeys the active signing keys; blanks and duplicates are ignored
+     * @throws IllegalArgumentException if no non-blank key is given
+     */
+    public SigningKeyRing(Collection<String> signingKeys) {
+        List<Key> active = new ArrayList<>();
+        for (String signingKey : new LinkedHashSet<>(signingKeys)) {
+            if (signingKey != null && !signingKey.isBlank()) {
+                active.add(new Key(signingKey));
+            }
+        }
+        if (active.isEmpty()) {
+            throw new IllegalArgumentException("At least one signing key is required");
+        }
+        this.keys = active.toArray(Key[]::new);
+    }
+
+    /**
+     * Verify a webhook signature against the active keys.
+     *
+     * @param payload   the raw JSON request body (bytes as received, before parsing)
+     * @param signature the value of the {@code x-webhook-signature} header, or {@code null}
+     * @return {@code true} if any active key produced the signature, or if no
+     *         signature was provided (same contract as {@link SignatureVerifier#verify})
+     */
+    public boolean verify(byte[] payload, String signature) {
+        if (signature == null || signature.isBlank()) {
+            return true;
+        }
+        if (!SignatureVerifier.isWellFormed(signature)) {
+            return false;
+        }
+
+        int first = preferred;
+        if (tryKey(first, payload, signature)) {
+            return true;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (i != first && tryKey(i, payload, signature)) {
+                preferred = i;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Number of active keys. */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Per-key match statistics, in configuration order. A key with no recent
+     * hits is safe to retire.
+     */
+    public List<KeyUsage> usage() {
+        List<KeyUsage> usage = new ArrayList<>(keys.length);
+        for (Key key : keys) {
+            long lastUsed = key.lastUsedMillis;
+            usage.add(new KeyUsage(key.fingerprint, key.hits.sum(),
+                    lastUsed == 0 ? null : Instant.ofEpochMilli(lastUsed)));
+        }
+        return usage;
+    }
+
+    private boolean tryKey(int index, byte[] payload, String signature) {
+        Key key = keys[index];
+        if (!key.verifier.matches(payload, signature)) {
+            return false;
+        }
+        key.hits.increment();
+        key.lastUsedMillis = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Match statistics for one signing key.
+     *
+     * @param fingerprint first 8 hex characters of the SHA-256 of the key (never the key itself)
+     * @param hits        webhooks verified with this key since startup
+     * @param lastUsedAt  when the key last matched, or {@code null} if never
+     */
+    public record KeyUsage(String fingerprint, long hits, Instant lastUsedAt) {
+    }
+
+    private static final class Key {
+        final SignatureVerifier verifier;
+        final String fingerprint;
+        final LongAdder hits = new LongAdder();
+        volatile long lastUsedMillis;
+
+        Key(String signingKey) {
+            this.verifier = new SignatureVerifier(signingKey);
+            this.fingerprint = fingerprint(signingKey);
+        }
+    }
+
+    static String fingerprint(String signingKey) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(signingKey.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 4);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.performativ.plugin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares in-flight GETs of the same URL between the fetches that need it.
+ *
+ * <p>While one request for a URL is in flight, other fetches of it wait for
+ * that request and share its parsed response instead of sending their own. A
+ * fetch only joins a request that is guaranteed to reflect its event: one
+ * started after the fetch was submitted, or one made for an event with an
+ * {@code updated_at} at least as new. Otherwise it sends a new request, which
+ * later fetches join instead. Every fetch sharing a request receives the same
+ * {@link JsonNode}.
+ */
+public final class SingleFlight {
+
+    /** The newest in-flight request per absolute URL. */
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * Join a suitable in-flight request for the URL, or send one that others
+     * can join.
+     *
+     * @param url         absolute URL to GET
+     * @param event       the event the entity is fetched for
+     * @param submittedAt {@link System#nanoTime()} when the fetch was submitted
+     * @param request     sends the request, if there is none to join
+     */
+    public JsonNode get(String url, WebhookEvent event, long submittedAt, HostRequestLimiter.Request<JsonNode> request)
+            throws IOException, InterruptedException {
+        Flight mine = new Flight(System.nanoTime(), event.updatedAtMicros());
+        Flight flight = inFlight.compute(url,
+                (k, current) -> current != null && current.covers(event, submittedAt) ? current : mine);
+
+        if (flight != mine) {
+            shared.incrementAndGet();
+            try {
+                // The request's own timeouts bound the wait; it always completes the response
+                return flight.response.get();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            }
+        }
+
+        try {
+            JsonNode entity = request.send();
+            mine.response.complete(entity);
+            return entity;
+        } catch (IOException | RuntimeException e) {
+            mine.response.completeExceptionally(e);
+            throw e;
+        } catch (InterruptedException e) {
+            mine.response.completeExceptionally(new IOException("Shared request was interrupted"));
+            throw e;
+        } finally {
+            // Later fetches need a new request; a newer flight may have replaced this one already
+            inFlight.remove(url, mine);
+        }
+    }
+
+    /** Fetches answered by another fetch's request. */
+    public long sharedCount() {
+        return shared.get();
+    }
+
+    /** A request in flight, and what it is known to reflect. */
+    private static final class Flight {
+        final CompletableFuture<JsonNode> response = new CompletableFuture<>();
+        /** {@link System#nanoTime()} when the request was started. */
+        final long startedAt;
+        /** {@code updated_at} of the event it was started for. */
+        final long updatedAtMicros;
+
+        Flight(long startedAt, long updatedAtMicros) {
+            this.startedAt = startedAt;
+            this.updatedAtMicros = updatedAtMicros;
+        }
+
+        /** Whether the response is at least as new as the event, submitted at {@code submittedAt}. */
+        boolean covers(WebhookEvent event, long submittedAt) {
+            return startedAt - submittedAt >= 0
+                    || (event.updatedAtMicros() != WebhookEvent.NO_TIMESTAMP
+                        && event.updatedAtMicros() <= updatedAtMicros);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.performativ.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-tenant webhook configuration for receivers shared by several tenants.
+ *
+ * <p>Tenants are identified by the {@code x-tenant} header. A tenant listed in
+ * {@code webhook.tenant-keys} is <em>registered</em>: its webhooks are verified
+ * only against its own signing keys, and its {@code event_id}s are tracked in
+ * their own idempotency namespace. Any other tenant falls back to the default
+ * keys ({@code webhook.signing-key} and {@code webhook.signing-keys}) and the
+ * shared namespace. If tenants are registered but there is no default key,
+ * webhooks with a missing or unregistered {@code x-tenant} are
+ * {@linkplain #accepts rejected}, as there is nothing to verify them with.
+ *
+ * <p>In async mode each registered tenant also gets its own bounded lane in
+ * {@link WebhookIngestionQueue}; all other tenants share one lane.
+ *
+ * <h3>Configuration</h3>
+ * <pre>
+ * WEBHOOK_SIGNING_KEY=default-key
+ * WEBHOOK_SIGNING_KEYS=other-default-key         # optional, during rotation
+ * WEBHOOK_TENANT_KEYS=acme=key-a,globex=key-g    # optional, repeat a tenant to rotate
+ * </pre>
+ */
+@Component
+public class TenantRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantRegistry.class);
+
+    /** Label used for the default keys in {@link #keyUsage()}. */
+    public static final String DEFAULT_TENANT = "default";
+
+    private final SigningKeyRing defaultKeys;
+    private final Map<String, SigningKeyRing> tenantKeys;
+
+    public TenantRegistry(
+            @Value("${webhook.signing-key:}") String signingKey,
+            @Value("${webhook.signing-keys:}") String additionalSigningKeys,
+            @Value("${webhook.tenant-keys:}") String tenantKeys) {
+        List<String> keys = new ArrayList<>(splitList(additionalSigningKeys));
+        if (!signingKey.isBlank()) {
+            keys.add(0, signingKey.trim());
+        }
+        this.defaultKeys = keys.isEmpty() ? null : new SigningKeyRing(keys);
+        this.tenantKeys = parseTenantKeys(tenantKeys);
+
+        if (defaultKeys == null && this.tenantKeys.isEmpty()) {
+            log.warn("No WEBHOOK_SIGNING_KEY configured - signature verification is disabled");
+        } else if (defaultKeys == null) {
+            log.info("No WEBHOOK_SIGNING_KEY configured - webhooks from tenants other than {} are rejected",
+                    this.tenantKeys.keySet());
+        }
+        if (defaultKeys != null) {
+            log.info("Webhook signature verification enabled with key(s) {}", fingerprints(defaultKeys));
+        }
+        this.tenantKeys.forEach((tenant, ring) ->
+                log.info("Tenant {} verified with key(s) {}", tenant, fingerprints(ring)));
+    }
+
+    /**
+     * Signing keys for a tenant.
+     *
+     * @param tenant the {@code x-tenant} header, may be {@code null}
+     * @return the tenant's own keys if it is registered, otherwise the default
+     *         keys, or {@code null} if verification is disabled for it
+     */
+    public SigningKeyRing keysFor(String tenant) {
+        SigningKeyRing ring = tenant == null ? null : tenantKeys.get(tenant);
+        return ring != null ? ring : defaultKeys;
+    }
+
+    /**
+     * Whether webhooks from a tenant are accepted at all. Only when tenant keys
+     * are configured without a default key is a missing or unregistered tenant
+     * refused; accepting it unverified would let anyone bypass the tenant keys
+     * by sending an unknown {@code x-tenant}.
+     *
+     * @param tenant the {@code x-tenant} header, may be {@code null}
+     */
+    public boolean accepts(String tenant) {
+        return defaultKeys != null || tenantKeys.isEmpty() || (tenant != null && tenantKeys.containsKey(tenant));
+    }
+
+    /**
+     * Idempotency namespace for a tenant.
+     *
+     * @return the tenant itself if it is registered, {@code null} for the shared namespace
+     */
+    public String namespaceFor(String tenant) {
+        return tenant != null && tenantKeys.containsKey(tenant) ? tenant : null;
+    }
+
+    /**
+     * Key usage for the default keys and each registered tenant.
+     */
+    public Map<String, List<SigningKeyRing.KeyUsage>> keyUsage() {
+        Map<String, List<SigningKeyRing.KeyUsage>> usage = new LinkedHashMap<>();
+        if (defaultKeys != null) {
+            usage.put(DEFAULT_TENANT, defaultKeys.usage());
+        }
+        tenantKeys.forEach((tenant, ring) -> usage.put(tenant, ring.usage()));
+        return usage;
+    }
+
+    private static Map<String, SigningKeyRing> parseTenantKeys(String config) {
+        Map<String, List<String>> keysByTenant = new LinkedHashMap<>();
+        for (String entry : splitList(config)) {
+            int separator = entry.indexOf('=');
+            if (separator <= 0 || separator == entry.length() - 1) {
+                throw new IllegalArgumentException(
+                        "Invalid webhook.tenant-keys entry, expected tenant=key: " + entry.split("=")[0]);
+            }
+            keysByTenant.computeIfAbsent(entry.substring(0, separator).trim(), t -> new ArrayList<>())
+                    .add(entry.substring(separator + 1).trim());
+        }
+
+        Map<String, SigningKeyRing> rings = new LinkedHashMap<>();
+        keysByTenant.forEach((tenant, keys) -> rings.put(tenant, new SigningKeyRing(keys)));
+        return Collections.unmodifiableMap(rings);
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.isBlank()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    private static List<String> fingerprints(SigningKeyRing ring) {
+        return ring.usage().stream().map(SigningKeyRing.KeyUsage::fingerprint).toList();
+    }
+}
@@ -0,0 +1,171 @@
+package com.performativ.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latest-wins coalescing of {@code Updated} events per idempotency namespace
+ * and {@code (entity, entity_id)}, so updates from different tenants that
+ * happen to share an entity ID are never merged.
+ *
+ * <p>The platform already coalesces rapid updates (see
+ * {@code docs/webhook-events.md}), but bulk edits still produce several
+ * {@code Updated} events for one entity within a second, and each would fetch
+ * the entity again. The first {@code Updated} for an entity starts a short
+ * window; updates arriving within it only replace the pending one if their
+ * {@code updated_at} is at least as new. When the window closes the newest
+ * update is handed to the handler, so a burst costs one fetch instead of one
+ * per event.
+ *
+ * <p>{@link #submit} returns the window's completion, shared by every update
+ * coalesced into it: it completes when the handler's work for the newest
+ * update has finished, or as soon as the window is cancelled.
+ *
+ * <p>Only {@code Updated} events are coalesced. {@code Created} and
+ * {@code Deleted} events are never delayed; a {@code Deleted} event
+ * {@linkplain #cancel cancels} the pending update for its entity, which would
+ * only fetch an entity that no longer exists.
+ */
+public final class UpdateCoalescer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(UpdateCoalescer.class);
+
+    private final long windowMillis;
+    private final Handler handler;
+    private final ScheduledExecutorService timer;
+
+    private final ConcurrentHashMap<Key, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param window  how long the first update for an entity waits for newer ones
+     * @param handler receives the newest update of each window, on the timer thread,
+     *                and returns the completion of its work
+     */
+    public UpdateCoalescer(Duration window, Handler handler) {
+        this.windowMillis = window.toMillis();
+        this.handler = handler;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "update-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Hold an {@code Updated} event until its window closes, keeping only the newest per entity.
+     *
+     * @param namespace idempotency namespace from {@link TenantRegistry#namespaceFor},
+     *                  or {@code null} for the shared namespace
+     * @return completes when the window's newest update has been handled
+     */
+    public CompletableFuture<Void> submit(WebhookEvent event, WebhookPayload payload, String namespace) {
+        Key key = new Key(namespace, event.entityName(), event.entityIdText());
+        Pending first = new Pending(event, payload, new CompletableFuture<>());
+        while (true) {
+            Pending previous = pending.putIfAbsent(key, first);
+            if (previous == null) {
+                timer.schedule(() -> flush(key, first.window), windowMillis, TimeUnit.MILLISECONDS);
+                return first.window;
+            }
+            // Keep the newer of the two; equal timestamps go to the later arrival
+            if (previous.event.updatedAtMicros() > event.updatedAtMicros()
+                    || pending.replace(key, previous, new Pending(event, payload, previous.window))) {
+                coalesced.incrementAndGet();
+                return previous.window;
+            }
+            // Replaced or flushed by another thread in the meantime: try again
+        }
+    }
+
+    /** Drop the pending update for an entity in a namespace, e.g. because it was deleted. */
+    public void cancel(WebhookEvent event, String namespace) {
+        Pending cancelled = pending.remove(new Key(namespace, event.entityName(), event.entityIdText()));
+        if (cancelled != null) {
+            coalesced.incrementAndGet();
+            cancelled.window.complete(null);
+        }
+    }
+
+    /** Number of updates that were dropped in favour of a newer one or a deletion. */
+    public long coalesced() {
+        return coalesced.get();
+    }
+
+    /** Hand all pending updates to the handler now and stop the timer. */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        for (Key key : pending.keySet()) {
+            Pending update = pending.remove(key);
+            if (update != null) {
+                handle(key, update);
+            }
+        }
+        log.info("Update coalescing stopped; {} update(s) coalesced", coalesced.get());
+    }
+
+    /** Close a window: hand over its newest update, unless it was cancelled. */
+    private void flush(Key key, CompletableFuture<Void> window) {
+        while (true) {
+            Pending update = pending.get(key);
+            if (update == null || update.window != window) {
+                // Cancelled, possibly followed by a new window with its own timer
+                return;
+            }
+            if (pending.remove(key, update)) {
+                handle(key, update);
+                return;
+            }
+        }
+    }
+
+    private void handle(Key key, Pending update) {
+        try {
+            handler.handle(update.event, update.payload, key.namespace).whenComplete((ignored, failure) -> {
+                if (failure == null) {
+                    update.window.complete(null);
+                } else {
+                    update.window.completeExceptionally(failure);
+                }
+            });
+        } catch (Exception e) {
+            log.error("Failed to handle coalesced update entity={} entity_id={}", key.entity, key.entityId, e);
+            update.window.completeExceptionally(e);
+        }
+    }
+
+    /** Receives the newest update of each window. */
+    @FunctionalInterface
+    public interface Handler {
+
+        /** @return completes when the work for the update has finished */
+        CompletableFuture<Void> handle(WebhookEvent event, WebhookPayload payload, String namespace);
+    }
+
+    /** @param namespace {@code null} for the shared namespace */
+    private record Key(String namespace, String entity, String entityId) {
+    }
+
+    /** Compared by identity, so {@code replace} and {@code remove} only succeed on the update looked at. */
+    private static final class Pending {
+        final WebhookEvent event;
+        final WebhookPayload payload;
+        /** Identifies the window this update belongs to, and completes with it. */
+        final CompletableFuture<Void> window;
+
+        Pending(WebhookEvent event, WebhookPayload payload, CompletableFuture<Void> window) {
+            this.event = event;
+            this.payload = payload;
+            this.window = window;
+        }
+    }
+}
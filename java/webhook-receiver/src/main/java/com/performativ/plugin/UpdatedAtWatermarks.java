@@ -0,0 +1,190 @@
+package com.performativ.plugin;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latest {@code updated_at} seen per idempotency namespace and
+ * {@code (entity, entity_id)}, to recognise events that arrive after a newer
+ * event for the same entity of the same tenant.
+ *
+ * <p>Delivery order is not guaranteed, so during retry storms an older
+ * {@code Updated} can arrive after a newer one. {@link #advance} compares an
+ * event with the watermark of its entity: an older event is stale and the
+ * watermark stays; otherwise the watermark moves up to the event.
+ *
+ * <p>The map is bounded and compact. Keys are a small number standing for the
+ * namespace, the entity type's ordinal and the numeric entity ID, stored with
+ * the watermark in primitive arrays of 22 bytes per slot and two to four
+ * slots per entity. It is split into
+ * independently locked stripes, so concurrent events for different entities
+ * rarely contend.
+ * When a stripe is full, the CLOCK algorithm evicts an entry that has not been
+ * used since the clock hand last passed it, approximating least recently
+ * used. Forgetting a watermark is safe: a stale event for that entity is just
+ * not recognised. Events without a compact key (see {@link WebhookEvent#raw()})
+ * or without a timestamp are never considered stale.
+ */
+public final class UpdatedAtWatermarks {
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicLong stale = new AtomicLong();
+
+    /** Number standing for each namespace seen; the shared namespace is 0. */
+    private final ConcurrentHashMap<String, Integer> namespaceIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextNamespaceId = new AtomicInteger();
+
+    /** @param maxEntries maximum number of entities tracked */
+    public UpdatedAtWatermarks(int maxEntries) {
+        int perStripe = Math.max(1, (maxEntries + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Record an event's {@code updated_at}.
+     *
+     * @param namespace idempotency namespace from {@link TenantRegistry#namespaceFor},
+     *                  or {@code null} for the shared namespace
+     * @return {@code false} if the event is stale, i.e. older than the newest
+     *         event already seen for the same entity in the same namespace
+     */
+    public boolean advance(WebhookEvent event, String namespace) {
+        long entityId = event.entityId();
+        long updatedAt = event.updatedAtMicros();
+        if (entityId < 0 || event.entity() == WebhookEvent.Entity.OTHER
+                || updatedAt == WebhookEvent.NO_TIMESTAMP) {
+            return true;
+        }
+        int namespaceId = namespace == null ? 0
+                : namespaceIds.computeIfAbsent(namespace, ns -> nextNamespaceId.incrementAndGet());
+        int entity = event.entity().ordinal();
+        int hash = hash(namespaceId, entity, entityId);
+        Stripe stripe = stripes[hash & (STRIPES - 1)];
+        boolean fresh;
+        synchronized (stripe) {
+            fresh = stripe.advance(namespaceId, entity, entityId, updatedAt, hash >>> 4);
+        }
+        if (!fresh) {
+            stale.incrementAndGet();
+        }
+        return fresh;
+    }
+
+    /** Number of stale events recognised. */
+    public long staleCount() {
+        return stale.get();
+    }
+
+    /** Number of entities currently tracked. */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    private static int hash(int namespaceId, int entity, long entityId) {
+        long h = (entityId ^ ((long) entity << 58) ^ (namespaceId * 0xC2B2AE3D27D4EB4FL)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Open-addressing table with linear probing, backward-shift removal and
+     * CLOCK eviction. Guarded by its own monitor.
+     */
+    private static final class Stripe {
+        final int maxEntries;
+        final int mask;
+        final int[] namespaceIds;
+        final long[] entityIds;
+        /** Entity type ordinal + 1; 0 marks an empty slot. */
+        final byte[] entities;
+        final long[] watermarks;
+        final boolean[] referenced;
+        int size;
+        int hand;
+
+        Stripe(int maxEntries) {
+            this.maxEntries = maxEntries;
+            int capacity = Integer.highestOneBit(Math.max(2, maxEntries * 2 - 1)) << 1;
+            this.mask = capacity - 1;
+            this.namespaceIds = new int[capacity];
+            this.entityIds = new long[capacity];
+            this.entities = new byte[capacity];
+            this.watermarks = new long[capacity];
+            this.referenced = new boolean[capacity];
+        }
+
+        boolean advance(int namespaceId, int entity, long entityId, long updatedAt, int hash) {
+            byte tag = (byte) (entity + 1);
+            int i = hash & mask;
+            for (; entities[i] != 0; i = (i + 1) & mask) {
+                if (entities[i] == tag && entityIds[i] == entityId && namespaceIds[i] == namespaceId) {
+                    referenced[i] = true;
+                    if (updatedAt < watermarks[i]) {
+                        return false;
+                    }
+                    watermarks[i] = updatedAt;
+                    return true;
+                }
+            }
+            if (size == maxEntries) {
+                evict();
+                // Removal may have shifted the probe sequence
+                i = hash & mask;
+                while (entities[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+            }
+            entities[i] = tag;
+            namespaceIds[i] = namespaceId;
+            entityIds[i] = entityId;
+            watermarks[i] = updatedAt;
+            referenced[i] = false;
+            size++;
+            return true;
+        }
+
+        /** Remove one entry not referenced since the hand last passed it. */
+        private void evict() {
+            while (true) {
+                int i = hand;
+                hand = (hand + 1) & mask;
+                if (entities[i] == 0) {
+                    continue;
+                }
+                if (referenced[i]) {
+                    referenced[i] = false;
+                    continue;
+                }
+                remove(i);
+                return;
+            }
+        }
+
+        private void remove(int gap) {
+            size--;
+            for (int i = (gap + 1) & mask; entities[i] != 0; i = (i + 1) & mask) {
+                int home = (hash(namespaceIds[i], entities[i] - 1, entityIds[i]) >>> 4) & mask;
+                boolean reachable = gap <= i ? gap < home && home <= i : gap < home || home <= i;
+                if (!reachable) {
+                    entities[gap] = entities[i];
+                    namespaceIds[gap] = namespaceIds[i];
+                    entityIds[gap] = entityIds[i];
+                    watermarks[gap] = watermarks[i];
+                    referenced[gap] = referenced[i];
+                    gap = i;
+                }
+            }
+            entities[gap] = 0;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.performativ.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control in front of {@link WebhookEventProcessor}.
+ *
+ * <p>Tracks the number of events currently being processed and a moving
+ * average of recent processing latency. Together with the ingestion queue
+ * depth this decides whether a new webhook should be accepted or rejected
+ * with HTTP 429. The platform treats 429 as retryable with exponential
+ * backoff, so overload turns into backpressure on its retry machinery instead
+ * of timeouts and unbounded memory growth.
+ *
+ * <p>In async mode the queue watermark applies both to the queue as a whole
+ * and to each tenant's lane, so a single noisy tenant is pushed back before
+ * it affects anyone else.
+ *
+ * <p>The {@code Retry-After} value is the estimated time to drain the pending
+ * work: {@code pending * averageLatency / concurrency}, clamped to
+ * {@code [1, maxRetryAfterSeconds]}.
+ *
+ * <h3>Configuration</h3>
+ * <pre>
+ * WEBHOOK_ADMISSION_MAX_IN_FLIGHT=150           # optional, default 150
+ * WEBHOOK_ADMISSION_QUEUE_WATERMARK=0.8         # optional, fraction of queue capacity
+ * WEBHOOK_ADMISSION_MAX_RETRY_AFTER_SECONDS=60  # optional, default 60
+ * </pre>
+ */
+@Component
+public class WebhookAdmissionControl {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookAdmissionControl.class);
+
+    /** Weight of the newest sample in the latency moving average (1/8). */
+    private static final int LATENCY_SMOOTHING_SHIFT = 3;
+
+    private final int maxInFlight;
+    private final double queueWatermark;
+    private final long maxRetryAfterSeconds;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong averageLatencyNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public WebhookAdmissionControl(
+            @Value("${webhook.admission.max-in-flight:150}") int maxInFlight,
+            @Value("${webhook.admission.queue-watermark:0.8}") double queueWatermark,
+            @Value("${webhook.admission.max-retry-after-seconds:60}") long maxRetryAfterSeconds) {
+        this.maxInFlight = maxInFlight;
+        this.queueWatermark = queueWatermark;
+        this.maxRetryAfterSeconds = maxRetryAfterSeconds;
+    }
+
+    /**
+     * Decide whether a new webhook can be admitted.
+     *
+     * @param queued        webhooks waiting in the ingestion queue
+     * @param queueCapacity capacity of the ingestion queue (0 when not queueing)
+     * @param laneQueued    webhooks from the same tenant waiting in the queue
+     * @param laneCapacity  capacity of the tenant's lane (0 when not queueing)
+     * @return {@code 0} if the webhook is admitted, otherwise the number of
+     *         seconds the platform should wait before retrying
+     */
+    public long checkAdmission(int queued, int queueCapacity, int laneQueued, int laneCapacity) {
+        int processing = inFlight.get();
+        boolean saturated = processing >= maxInFlight
+                || (queueCapacity > 0 && queued >= queueCapacity * queueWatermark)
+                || (laneCapacity > 0 && laneQueued >= laneCapacity * queueWatermark);
+        if (!saturated) {
+            return 0;
+        }
+        return reject(queued + processing, processing);
+    }
+
+    /**
+     * Compute a {@code Retry-After} for a webhook that could not be queued.
+     */
+    public long rejectQueueFull(int queued) {
+        return reject(queued + inFlight.get(), inFlight.get());
+    }
+
+    /**
+     * Mark the start of event processing.
+     *
+     * @return a start timestamp to pass to {@link #end(long)}
+     */
+    public long begin() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Mark the end of event processing and record its latency.
+     */
+    public void end(long startNanos) {
+        inFlight.decrementAndGet();
+        long sample = System.nanoTime() - startNanos;
+        averageLatencyNanos.getAndUpdate(avg -> avg == 0
+                ? sample
+                : avg + ((sample - avg) >> LATENCY_SMOOTHING_SHIFT));
+    }
+
+    /** Number of events currently being processed. */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /** Moving average of recent processing latency in milliseconds. */
+    public long averageLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(averageLatencyNanos.get());
+    }
+
+    /** Total webhooks rejected with 429 since startup. */
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    private long reject(int pending, int concurrency) {
+        long total = rejected.incrementAndGet();
+        long drainNanos = pending * averageLatencyNanos.get() / Math.max(1, concurrency);
+        long retryAfter = Math.min(maxRetryAfterSeconds,
+                Math.max(1, TimeUnit.NANOSECONDS.toSeconds(drainNanos) + 1));
+        if (total % 100 == 1) {
+            log.warn("Webhook pipeline saturated: pending={} inFlight={} avgLatencyMs={} retryAfter={}s rejected={}",
+                    pending, concurrency, averageLatencyMillis(), retryAfter, total);
+        }
+        return retryAfter;
+    }
+}
@@ -1,64 +1,93 @@
 package com.performativ.plugin;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * Receives and processes webhooks from Performativ.
  *
  * <p>This controller handles HTTP-specific concerns (signature verification,
- * JSON parsing, response codes) and delegates event processing to
+ * JSON parsing via {@link WebhookPayload}, response codes) and delegates event processing to
  * {@link WebhookEventProcessor}.
  *
  * <p>This controller demonstrates:
  * <ul>
- *   <li>HMAC-SHA256 signature verification</li>
+ *   <li>HMAC-SHA256 signature verification, with several active keys during
+ *       key rotation (see {@link SigningKeyRing}) and per-tenant keys
+ *       (see {@link TenantRegistry})</li>
  *   <li>Idempotency via {@code event_id} tracking (shared with {@link WebhookPoller})</li>
- *   <li>Quick HTTP 200 response (process asynchronously in production)</li>
+ *   <li>Quick HTTP 200 response, optionally acknowledging before processing
+ *       via {@link WebhookIngestionQueue}, crash-safe with a {@link WebhookJournal}</li>
+ *   <li>HTTP 429 with {@code Retry-After} when the pipeline is saturated
+ *       (see {@link WebhookAdmissionControl})</li>
  * </ul>
  *
  * <h3>Configuration</h3>
  * Set the following environment variable (or application.properties):
  * <pre>
  * WEBHOOK_SIGNING_KEY=your-signing-key
+ * WEBHOOK_SIGNING_KEYS=old-key,new-key   # optional, extra keys during rotation
+ * WEBHOOK_TENANT_KEYS=acme=key-a         # optional, per-tenant keys
+ * WEBHOOK_ASYNC_ENABLED=true             # optional, ack before processing
+ * WEBHOOK_JOURNAL_DIR=/data/journal      # optional, journal before acking
+ * WEBHOOK_MAX_BODY_SIZE=10MB             # optional, larger bodies get 413
  * </pre>
+ *
+ * <p>This is the servlet (Spring MVC) receiver. With
+ * {@code spring.main.web-application-type=reactive},
+ * {@link ReactiveWebhookHandler} serves the same endpoints instead.
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/webhook")
 public class WebhookController {
 
     private static final Logger log = LoggerFactory.getLogger(WebhookController.class);
 
-    private final SignatureVerifier verifier;
+    private final TenantRegistry tenants;
     private final ObjectMapper objectMapper;
     private final WebhookEventProcessor processor;
+    private final WebhookIngestionQueue ingestionQueue;
+    private final WebhookAdmissionControl admissionControl;
+    private final long maxBodyBytes;
 
     public WebhookController(
-            @Value("${webhook.signing-key:}") String signingKey,
+            TenantRegistry tenants,
             ObjectMapper objectMapper,
-            WebhookEventProcessor processor) {
-        this.verifier = signingKey.isBlank() ? null : new SignatureVerifier(signingKey);
+            WebhookEventProcessor processor,
+            WebhookIngestionQueue ingestionQueue,
+            WebhookAdmissionControl admissionControl,
+            @Value("${webhook.max-body-size:10MB}") DataSize maxBodySize) {
+        this.tenants = tenants;
         this.objectMapper = objectMapper;
         this.processor = processor;
-
-        if (this.verifier == null) {
-            log.warn("No WEBHOOK_SIGNING_KEY configured - signature verification is disabled");
-        }
+        this.ingestionQueue = ingestionQueue;
+        this.admissionControl = admissionControl;
+        this.maxBodyBytes = maxBodySize.toBytes();
     }
 
     /**
      * POST /webhook
      *
-     * <p>Receives webhook events from Performativ. Returns 200 immediately and
-     * processes the event. In production, queue the event for async processing.
+     * <p>Receives webhook events from Performativ. By default the event is
+     * processed on the request thread before returning 200. In async mode the
+     * verified body is queued and 200 is returned straight away; with a journal
+     * configured, only once the body is on disk (503 if it cannot be stored).
+     *
+     * <p>When the pipeline is saturated, 429 is returned with a
+     * {@code Retry-After} header so the platform backs off and retries later.
      *
      * <h4>Headers</h4>
      * <ul>
@@ -75,35 +104,89 @@ public class WebhookController {
             @RequestHeader(value = "x-tenant", required = false) String tenant,
             @RequestHeader(value = "x-api-domain", required = false) String apiDomain) {
 
-        // Step 1: Verify signature
-        if (verifier != null && !verifier.verify(body, signature)) {
+        if (body.length > maxBodyBytes) {
+            log.warn("Webhook from tenant={} exceeds {} bytes", tenant, maxBodyBytes);
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", "Payload too large"));
+        }
+
+        // Step 1: Verify signature with the tenant's keys
+        if (!tenants.accepts(tenant)) {
+            log.warn("Webhook from unknown tenant={} rejected", tenant);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Unknown tenant"));
+        }
+        SigningKeyRing signingKeys = tenants.keysFor(tenant);
+        if (signingKeys != null && !signingKeys.verify(body, signature)) {
             log.warn("Invalid webhook signature from tenant={}", tenant);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "Invalid signature"));
         }
 
+        // Admission control: shed load before doing any more work
+        long retryAfter = admissionControl.checkAdmission(
+                ingestionQueue.queueDepth(), ingestionQueue.capacity(),
+                ingestionQueue.queueDepth(tenant), ingestionQueue.laneCapacity());
+        if (retryAfter > 0) {
+            return tooManyRequests(retryAfter);
+        }
+
+        // Async mode: queue (and journal) the verified body, workers parse and process it
+        if (ingestionQueue.isEnabled()) {
+            Map<String, String> headers = new LinkedHashMap<>();
+            putIfPresent(headers, "x-tenant", tenant);
+            putIfPresent(headers, "x-api-domain", apiDomain);
+            putIfPresent(headers, "x-webhook-signature", signature);
+            boolean queued;
+            try {
+                queued = ingestionQueue.offer(body, headers, tenants.namespaceFor(tenant));
+            } catch (UncheckedIOException e) {
+                // Not safely stored, so do not acknowledge: the platform will retry
+                log.error("Failed to journal webhook from tenant={}", tenant, e);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .body(Map.of("error", "Webhook could not be stored"));
+            }
+            if (!queued) {
+                return tooManyRequests(admissionControl.rejectQueueFull(ingestionQueue.queueDepth()));
+            }
+            return ResponseEntity.ok(Map.of("status", "ok", "message", "Queued"));
+        }
+
         // Step 2: Parse payload
-        JsonNode payload;
+        WebhookPayload payload;
         try {
-            payload = objectMapper.readTree(body);
+            payload = WebhookPayload.parse(objectMapper, body);
         } catch (Exception e) {
             log.error("Failed to parse webhook payload", e);
             return ResponseEntity.badRequest()
-                    .body(Map.of("error", "Invalid JSON"));
+                    .body(Map.of("error", "Invalid payload"));
         }
 
         log.info("Webhook received: entity={} event={} entity_id={} event_id={} tenant={}",
-                payload.path("entity").asText(""),
-                payload.path("event").asText(""),
-                payload.path("entity_id").asText(""),
-                payload.path("event_id").asText(""),
-                tenant);
+                payload.entity(), payload.event(), payload.entityId(), payload.eventId(), tenant);
 
         // Step 3: Idempotency check + processing (shared with poller)
-        if (!processor.processIfNew(payload)) {
-            return ResponseEntity.ok(Map.of("status", "ok", "message", "Already processed"));
+        long started = admissionControl.begin();
+        try {
+            if (!processor.processIfNew(payload, tenants.namespaceFor(tenant))) {
+                return ResponseEntity.ok(Map.of("status", "ok", "message", "Already processed"));
+            }
+        } finally {
+            admissionControl.end(started);
         }
 
         return ResponseEntity.ok(Map.of("status", "ok"));
     }
+
+    private static void putIfPresent(Map<String, String> headers, String name, String value) {
+        if (value != null) {
+            headers.put(name, value);
+        }
+    }
+
+    private static ResponseEntity<Map<String, String>> tooManyRequests(long retryAfterSeconds) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .body(Map.of("error", "Too many requests"));
+    }
 }
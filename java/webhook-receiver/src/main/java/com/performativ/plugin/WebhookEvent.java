@@ -0,0 +1,276 @@
+package com.performativ.plugin;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compact, typed form of a processed webhook event, as kept in the
+ * {@link EventStore}.
+ *
+ * <p>Entity and event types come from the small vocabularies in
+ * {@code docs/webhook-events.md} and are stored as enums, {@code entity_id} as
+ * a {@code long}, {@code event_id} as the two halves of its UUID and
+ * {@code updated_at} as microseconds since the epoch. That is a single object
+ * of about 56 bytes instead of a map of eight strings, and comparing types is
+ * a reference comparison.
+ *
+ * <p>Values outside those forms (an entity type added to the platform later, a
+ * non-numeric ID, a non-canonical UUID) are not lost: the type becomes
+ * {@link Entity#OTHER} or {@link Event#OTHER} and the original text is kept in
+ * {@link #raw()}, which is {@code null} for every well-formed event. The
+ * {@code ...Name()} and {@code ...Text()} accessors always return the text as
+ * it was received.
+ *
+ * @param entity          entity type
+ * @param event           event type
+ * @param entityId        entity ID, or -1 if not a canonical non-negative integer
+ * @param eventIdMsb      most significant bits of the {@code event_id} UUID
+ * @param eventIdLsb      least significant bits of the {@code event_id} UUID
+ * @param updatedAtMicros {@code updated_at} in microseconds since the epoch, or
+ *                        {@link #NO_TIMESTAMP} if missing or unparseable
+ * @param raw             original text of the fields without a compact form, or {@code null}
+ */
+public record WebhookEvent(
+        Entity entity,
+        Event event,
+        long entityId,
+        long eventIdMsb,
+        long eventIdLsb,
+        long updatedAtMicros,
+        Raw raw) {
+
+    /** {@link #updatedAtMicros()} of an event without a usable {@code updated_at}. */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    /** Entity types from {@code docs/webhook-events.md}. */
+    public enum Entity {
+        CLIENT("Client"),
+        PORTFOLIO("Portfolio"),
+        PERSON("Person"),
+        BUSINESS("Business"),
+        GROUP("Group"),
+        USER("User"),
+        CASH_ACCOUNT("CashAccount"),
+        CASH_ACCOUNT_MOVEMENT("CashAccountMovement"),
+        TRANSACTION("Transaction"),
+        INSTRUMENT("Instrument"),
+        ORDER("Order"),
+        ORDER_BATCH("OrderBatch"),
+        REBALANCING_PROPOSAL("RebalancingProposal"),
+        MODEL_PORTFOLIO("ModelPortfolio"),
+        DOCUMENT("Document"),
+        REPORT("Report"),
+        ONBOARDING_LINK("OnboardingLink"),
+        CUSTOM_FIELD_VALUE("CustomFieldValue"),
+        PLUGIN("Plugin"),
+        OVERALL("Overall"),
+        /** Any other value; the text is in {@link Raw#entity()}. */
+        OTHER(null);
+
+        private static final Map<String, Entity> BY_NAME = new HashMap<>();
+
+        static {
+            for (Entity entity : values()) {
+                if (entity.wireName != null) {
+                    BY_NAME.put(entity.wireName, entity);
+                }
+            }
+        }
+
+        private final String wireName;
+
+        Entity(String wireName) {
+            this.wireName = wireName;
+        }
+
+        /** The name used in payloads, e.g. {@code "CashAccount"}; {@code null} for {@link #OTHER}. */
+        public String wireName() {
+            return wireName;
+        }
+
+        /** The entity type with this payload name, or {@link #OTHER}. */
+        public static Entity fromWireName(String name) {
+            return BY_NAME.getOrDefault(name, OTHER);
+        }
+    }
+
+    /** Event types from {@code docs/webhook-events.md}. */
+    public enum Event {
+        CREATED("Created"),
+        UPDATED("Updated"),
+        DELETED("Deleted"),
+        ACTIVATED("Activated"),
+        DEACTIVATED("Deactivated"),
+        DAILY_HEART_BEAT("DailyHeartBeat"),
+        /** Any other value; the text is in {@link Raw#event()}. */
+        OTHER(null);
+
+        private static final Map<String, Event> BY_NAME = new HashMap<>();
+
+        static {
+            for (Event event : values()) {
+                if (event.wireName != null) {
+                    BY_NAME.put(event.wireName, event);
+                }
+            }
+        }
+
+        private final String wireName;
+
+        Event(String wireName) {
+            this.wireName = wireName;
+        }
+
+        /** The name used in payloads, e.g. {@code "DailyHeartBeat"}; {@code null} for {@link #OTHER}. */
+        public String wireName() {
+            return wireName;
+        }
+
+        /** The event type with this payload name, or {@link #OTHER}. */
+        public static Event fromWireName(String name) {
+            return BY_NAME.getOrDefault(name, OTHER);
+        }
+    }
+
+    /**
+     * Original text of the fields that have no compact form; {@code null} for
+     * the fields that do.
+     */
+    public record Raw(String entity, String event, String entityId, String eventId, String updatedAt) {
+    }
+
+    /** Convert the routing fields of a payload. */
+    public static WebhookEvent from(WebhookPayload payload) {
+        Entity entity = Entity.fromWireName(payload.entity());
+        Event event = Event.fromWireName(payload.event());
+        long entityId = parseEntityId(payload.entityId());
+
+        String eventIdText = payload.eventId();
+        long msb = 0;
+        long lsb = 0;
+        boolean compactEventId = isCanonicalUuid(eventIdText);
+        if (compactEventId) {
+            UUID uuid = UUID.fromString(eventIdText);
+            msb = uuid.getMostSignificantBits();
+            lsb = uuid.getLeastSignificantBits();
+        }
+
+        long updatedAt = parseMicros(payload.updatedAt());
+
+        Raw raw = null;
+        if (entity == Entity.OTHER || event == Event.OTHER || entityId < 0 || !compactEventId
+                || (updatedAt == NO_TIMESTAMP && !payload.updatedAt().isEmpty())) {
+            raw = new Raw(
+                    entity == Entity.OTHER ? payload.entity() : null,
+                    event == Event.OTHER ? payload.event() : null,
+                    entityId < 0 ? payload.entityId() : null,
+                    compactEventId ? null : eventIdText,
+                    updatedAt == NO_TIMESTAMP && !payload.updatedAt().isEmpty() ? payload.updatedAt() : null);
+        }
+        return new WebhookEvent(entity, event, entityId, msb, lsb, updatedAt, raw);
+    }
+
+    /** Entity type as received. */
+    public String entityName() {
+        return entity != Entity.OTHER ? entity.wireName : raw.entity();
+    }
+
+    /** Event type as received. */
+    public String eventName() {
+        return event != Event.OTHER ? event.wireName : raw.event();
+    }
+
+    /** {@code entity_id} as received. */
+    public String entityIdText() {
+        return entityId >= 0 ? Long.toString(entityId) : raw.entityId();
+    }
+
+    /** {@code event_id} as received. */
+    public String eventIdText() {
+        return raw != null && raw.eventId() != null
+                ? raw.eventId()
+                : new UUID(eventIdMsb, eventIdLsb).toString();
+    }
+
+    /** Whether the entity type is {@code name}, without converting this event back to text. */
+    public boolean isEntity(Entity type, String name) {
+        return type != Entity.OTHER ? entity == type : entity == Entity.OTHER && name.equals(raw.entity());
+    }
+
+    /** Whether the event type is {@code name}, without converting this event back to text. */
+    public boolean isEvent(Event type, String name) {
+        return type != Event.OTHER ? event == type : event == Event.OTHER && name.equals(raw.event());
+    }
+
+    /** Whether the entity ID is {@code text}; {@code id} is {@code parseEntityId(text)}. */
+    public boolean hasEntityId(long id, String text) {
+        return id >= 0 ? entityId == id : entityId < 0 && text.equals(raw.entityId());
+    }
+
+    /**
+     * The event as returned by {@code GET /events}.
+     *
+     * @param seq the event's sequence number in the store
+     */
+    public Map<String, String> toMap(long seq) {
+        return Map.of(
+                "seq", Long.toString(seq),
+                "entity", entityName(),
+                "event", eventName(),
+                "entity_id", entityIdText(),
+                "event_id", eventIdText());
+    }
+
+    /**
+     * Parse an entity ID written as a canonical non-negative integer (no sign,
+     * no leading zeros), so it converts back to the same text.
+     *
+     * @return the ID, or -1 if it has no compact form
+     */
+    public static long parseEntityId(String text) {
+        int length = text.length();
+        if (length == 0 || length > 18 || (text.charAt(0) == '0' && length > 1)) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /** Lower-case 8-4-4-4-12 UUID, which {@link UUID#toString()} reproduces exactly. */
+    private static boolean isCanonicalUuid(String text) {
+        if (text.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = text.charAt(i);
+            boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+            if (dash ? c != '-' : !((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseMicros(String text) {
+        if (text.isEmpty()) {
+            return NO_TIMESTAMP;
+        }
+        try {
+            Instant instant = Instant.parse(text);
+            return TimeUnit.SECONDS.toMicros(instant.getEpochSecond()) + instant.getNano() / 1_000;
+        } catch (DateTimeParseException | ArithmeticException e) {
+            return NO_TIMESTAMP;
+        }
+    }
+}
@@ -1,13 +1,20 @@
 package com.performativ.plugin;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Shared event processor for webhook payloads.
@@ -16,8 +23,21 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * logic that is shared between the push path ({@link WebhookController})
  * and the pull path ({@link WebhookPoller}).
  *
- * <p>In production, replace the in-memory set with a database or Redis
- * for durability across restarts.
+ * <p>Processed IDs are recorded in an {@link IdempotencyStore}, selected with
+ * {@code webhook.idempotency.store}:
+ * <ul>
+ *   <li>{@code memory} — {@link InMemoryIdempotencyStore}, forgotten on restart</li>
+ *   <li>{@code file} — {@link FileIdempotencyStore} in {@code webhook.idempotency.dir}</li>
+ *   <li>{@code jdbc} — {@link JdbcIdempotencyStore}, shared by several replicas</li>
+ * </ul>
+ * When the store is not set it is {@code file} if a directory is configured
+ * and {@code memory} otherwise.
+ *
+ * <p>An event ID is claimed before the event is processed and the claim is
+ * settled once processing has finished, including the background fetch and
+ * the {@link EntityHandler}s: it is completed on success and released on
+ * failure, so a failed event can be processed again when it is retried or
+ * replayed instead of being skipped as a duplicate.
  */
 @Service
 public class WebhookEventProcessor {
@@ -25,85 +45,415 @@ public class WebhookEventProcessor {
     private static final Logger log = LoggerFactory.getLogger(WebhookEventProcessor.class);
 
     /**
-     * Tracks processed event IDs for idempotency.
+     * Tracks processed event IDs for idempotency, per tenant namespace.
      * Shared across both push (webhook POST) and pull (poller) paths.
      */
-    private final Set<String> processedEvents = ConcurrentHashMap.newKeySet();
+    private final IdempotencyStore processedEvents;
 
     /**
      * Stores received events for query by integration tests.
      * In production, replace with a proper event store.
+     * Replaced as a whole by {@link #clearEvents()}.
+     */
+    private volatile EventStore eventStore;
+
+    private final int eventStoreCapacity;
+    private final Duration eventStoreRetention;
+
+    /** Coalesces {@code Updated} events before fetching, or {@code null} when disabled. */
+    private final UpdateCoalescer updateCoalescer;
+
+    /** Latest {@code updated_at} per entity, or {@code null} when disabled. */
+    private final UpdatedAtWatermarks watermarks;
+
+    private final EntityFetcher entityFetcher;
+
+    /** Per-entity lanes for {@link #processEvent}, or {@code null} to process on the calling thread. */
+    private final PartitionedExecutor partitions;
+
+    public WebhookEventProcessor(
+            EntityFetcher entityFetcher,
+            WebhookProcessingProperties properties,
+            // Not in the properties record: webhook.partitions is both a value and a prefix
+            @Value("${webhook.partitions:0}") int partitions,
+            @Value("${webhook.partitions.queue-capacity:1000}") int partitionQueueCapacity,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) throws IOException {
+        this.entityFetcher = entityFetcher;
+        this.eventStoreCapacity = properties.events().capacity();
+        this.eventStoreRetention = Duration.ofMinutes(properties.events().retentionMinutes());
+        this.eventStore = newEventStore(0);
+        long coalesceWindowMs = properties.coalesce().windowMs();
+        this.updateCoalescer = coalesceWindowMs > 0
+                ? new UpdateCoalescer(Duration.ofMillis(coalesceWindowMs), this::fetchLatest)
+                : null;
+        int stalenessMaxEntries = properties.staleness().maxEntries();
+        this.watermarks = stalenessMaxEntries > 0 ? new UpdatedAtWatermarks(stalenessMaxEntries) : null;
+        this.partitions = partitions > 0 ? new PartitionedExecutor(partitions, partitionQueueCapacity, virtualThreads) : null;
+
+        WebhookProcessingProperties.Idempotency idempotency = properties.idempotency();
+        Duration retention = Duration.ofHours(idempotency.retentionHours());
+        String store = idempotency.store();
+        if (store.isBlank()) {
+            store = idempotency.dir().isBlank() ? "memory" : "file";
+        }
+        this.processedEvents = switch (store) {
+            case "memory" -> new InMemoryIdempotencyStore(retention, idempotency.maxEntries());
+            case "file" -> {
+                if (idempotency.dir().isBlank()) {
+                    throw new IllegalArgumentException("webhook.idempotency.store=file requires webhook.idempotency.dir");
+                }
+                yield new FileIdempotencyStore(Path.of(idempotency.dir()), retention, idempotency.maxEntries(),
+                        idempotency.fsyncIntervalMs());
+            }
+            case "jdbc" -> {
+                if (idempotency.jdbcUrl().isBlank()) {
+                    throw new IllegalArgumentException("webhook.idempotency.store=jdbc requires webhook.idempotency.jdbc-url");
+                }
+                yield new JdbcIdempotencyStore(idempotency.jdbcUrl(), idempotency.jdbcUser(),
+                        idempotency.jdbcPassword(),
+                        idempotency.instanceId().isBlank() ? hostName() : idempotency.instanceId(),
+                        retention, idempotency.jdbcPoolSize());
+            }
+            default -> throw new IllegalArgumentException(
+                    "Unknown webhook.idempotency.store '" + store + "', expected memory, file or jdbc");
+        };
+        log.info("Idempotency store: {}", store);
+    }
+
+    /**
+     * Finish queued events, handle pending coalesced updates and flush or
+     * disconnect the idempotency store on shutdown.
      */
-    private final List<Map<String, String>> eventStore = new CopyOnWriteArrayList<>();
+    @PreDestroy
+    public void close() {
+        if (partitions != null) {
+            partitions.close();
+        }
+        if (updateCoalescer != null) {
+            updateCoalescer.close();
+        }
+        processedEvents.close();
+    }
 
     /**
      * Process a webhook payload if it hasn't been seen before.
      *
+     * @param payload the webhook payload
+     * @return {@code true} if the event was new and processed,
+     *         {@code false} if it was a duplicate
+     */
+    public boolean processIfNew(WebhookPayload payload) {
+        return processIfNew(payload, null);
+    }
+
+    /**
+     * Process an already parsed webhook payload if it hasn't been seen before.
+     * Equivalent to {@code processIfNew(WebhookPayload.fromTree(payload))}.
+     *
      * @param payload the parsed webhook JSON payload
      * @return {@code true} if the event was new and processed,
      *         {@code false} if it was a duplicate
      */
     public boolean processIfNew(JsonNode payload) {
-        String eventId = payload.path("event_id").asText("");
-        String entity = payload.path("entity").asText("");
-        String event = payload.path("event").asText("");
-        String entityId = payload.path("entity_id").asText("");
+        return processIfNew(WebhookPayload.fromTree(payload));
+    }
 
-        if (!eventId.isEmpty() && !processedEvents.add(eventId)) {
-            log.debug("Duplicate event skipped: event_id={}", eventId);
-            return false;
+    /**
+     * Process a webhook payload if it hasn't been seen before in the given
+     * idempotency namespace.
+     *
+     * @param payload   the webhook payload
+     * @param namespace tenant namespace from {@link TenantRegistry#namespaceFor},
+     *                  or {@code null} for the shared namespace
+     * @return {@code true} if the event was new and processed,
+     *         {@code false} if it was a duplicate
+     */
+    public boolean processIfNew(WebhookPayload payload, String namespace) {
+        return submitIfNew(payload, namespace, false) != null;
+    }
+
+    /**
+     * Process a webhook payload if it hasn't been seen before in the given
+     * idempotency namespace, and report when processing has finished.
+     *
+     * @param payload   the webhook payload
+     * @param namespace tenant namespace from {@link TenantRegistry#namespaceFor},
+     *                  or {@code null} for the shared namespace
+     * @param replayed  whether the payload is replayed from the {@link WebhookJournal}
+     *                  (see {@link IdempotencyStore#reclaim})
+     * @return completes when the event, including its fetch and handlers, has
+     *         been processed, or exceptionally if that failed; {@code null} if
+     *         the event was a duplicate
+     */
+    public CompletableFuture<Void> submitIfNew(WebhookPayload payload, String namespace, boolean replayed) {
+        String eventId = payload.eventId();
+        if (!eventId.isEmpty()) {
+            boolean claimed = replayed
+                    ? processedEvents.reclaim(namespace, eventId)
+                    : processedEvents.claim(namespace, eventId);
+            if (!claimed) {
+                log.debug("Duplicate event skipped: event_id={}", eventId);
+                return null;
+            }
+        }
+        return processClaimed(payload, namespace);
+    }
+
+    /**
+     * Process a batch of webhook payloads, skipping those seen before. All
+     * event IDs are claimed with a single {@link IdempotencyStore#claim} call,
+     * then new events are processed in order. Events whose {@code event_id} is
+     * longer than {@link IdempotencyStore#MAX_EVENT_ID_LENGTH} are skipped with
+     * a warning. If processing an event throws, the claims of the events after
+     * it are released, so a retry of the batch processes them.
+     *
+     * @param payloads  the webhook payloads
+     * @param namespace tenant namespace from {@link TenantRegistry#namespaceFor},
+     *                  or {@code null} for the shared namespace
+     * @return the number of events that were new and processed
+     */
+    public int processAllIfNew(List<WebhookPayload> payloads, String namespace) {
+        List<String> eventIds = new ArrayList<>(payloads.size());
+        for (WebhookPayload payload : payloads) {
+            if (!payload.eventId().isEmpty() && !tooLong(payload)) {
+                eventIds.add(payload.eventId());
+            }
+        }
+        boolean[] claimed = eventIds.isEmpty() ? new boolean[0] : processedEvents.claim(namespace, eventIds);
+
+        int processed = 0;
+        int next = 0;
+        int i = 0;
+        try {
+            for (; i < payloads.size(); i++) {
+                WebhookPayload payload = payloads.get(i);
+                if (tooLong(payload)) {
+                    log.warn("Event skipped, event_id is longer than {} characters: entity={} entity_id={}",
+                            IdempotencyStore.MAX_EVENT_ID_LENGTH, payload.entity(), payload.entityId());
+                    continue;
+                }
+                if (!payload.eventId().isEmpty() && !claimed[next++]) {
+                    log.debug("Duplicate event skipped: event_id={}", payload.eventId());
+                    continue;
+                }
+                processClaimed(payload, namespace);
+                processed++;
+            }
+        } catch (RuntimeException e) {
+            // The failed event was settled by processClaimed; the ones after it were never handed over
+            for (int j = i + 1; j < payloads.size(); j++) {
+                WebhookPayload payload = payloads.get(j);
+                if (!payload.eventId().isEmpty() && !tooLong(payload) && claimed[next++]) {
+                    settle(payload, namespace, e);
+                }
+            }
+            throw e;
+        }
+        return processed;
+    }
+
+    /** Whether the event ID cannot be claimed; {@link WebhookPayload#parse} rejects these already. */
+    private static boolean tooLong(WebhookPayload payload) {
+        return payload.eventId().length() > IdempotencyStore.MAX_EVENT_ID_LENGTH;
+    }
+
+    /** Process an event whose ID was claimed, then complete or release the claim. */
+    private CompletableFuture<Void> processClaimed(WebhookPayload payload, String namespace) {
+        CompletableFuture<Void> done;
+        try {
+            done = process(payload, namespace);
+        } catch (RuntimeException e) {
+            settle(payload, namespace, e);
+            throw e;
+        }
+        return done.whenComplete((ignored, failure) -> settle(payload, namespace, failure));
+    }
+
+    private void settle(WebhookPayload payload, String namespace, Throwable failure) {
+        String eventId = payload.eventId();
+        if (eventId.isEmpty()) {
+            return;
+        }
+        try {
+            if (failure == null) {
+                processedEvents.complete(namespace, eventId);
+            } else {
+                processedEvents.release(namespace, eventId);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to record the outcome of event_id={} in the idempotency store", eventId, e);
         }
+    }
+
+    private CompletableFuture<Void> process(WebhookPayload payload, String namespace) {
+        String eventId = payload.eventId();
+        String entity = payload.entity();
+        String event = payload.event();
+        String entityId = payload.entityId();
 
         log.info("Processing event: entity={} event={} entity_id={} event_id={}",
                 entity, event, entityId, eventId);
 
-        eventStore.add(Map.of(
-                "entity", entity,
-                "event", event,
-                "entity_id", entityId,
-                "event_id", eventId));
+        WebhookEvent stored = WebhookEvent.from(payload);
+        eventStore.append(stored);
 
-        processEvent(payload);
-        return true;
+        if (partitions == null) {
+            return processEvent(stored, payload, namespace);
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        partitions.execute(stored, () -> {
+            try {
+                processEvent(stored, payload, namespace).whenComplete((ignored, failure) -> {
+                    if (failure == null) {
+                        done.complete(null);
+                    } else {
+                        done.completeExceptionally(failure);
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.error("Failed to process event: entity={} event={} entity_id={} event_id={}",
+                        entity, event, entityId, eventId, e);
+                done.completeExceptionally(e);
+            }
+        });
+        return done;
     }
 
     /** Returns all stored events (for integration test queries). */
     public List<Map<String, String>> getEvents() {
-        return List.copyOf(eventStore);
+        return eventStore.query(null, null, null, 0, Long.MAX_VALUE).toList();
     }
 
-    /** Clears the event store (call between test runs). */
+    /**
+     * Returns stored events matching every non-null filter, using the store's
+     * indexes rather than scanning all events, as a lazy stream.
+     *
+     * @param after only events with a greater {@code seq} (0 for all)
+     * @param limit maximum number of events returned
+     */
+    public Stream<Map<String, String>> findEvents(String entity, String event, String entityId,
+                                                  long after, long limit) {
+        return eventStore.query(entity, event, entityId, after, limit);
+    }
+
+    /**
+     * Clears the event store (call between test runs). {@code seq}s carry on
+     * from the cleared store, so {@code after} cursors stay valid.
+     */
     public void clearEvents() {
-        eventStore.clear();
+        eventStore = newEventStore(eventStore.lastSeq());
+    }
+
+    /**
+     * Size, capacity and eviction counters of the event store, the number of
+     * stale events skipped and the number of events waiting for their lane.
+     */
+    public Map<String, Long> getEventStoreStats() {
+        EventStore store = eventStore;
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", store.size());
+        stats.put("capacity", (long) store.capacity());
+        stats.put("evicted_by_count", store.evictedByCount());
+        stats.put("evicted_by_age", store.evictedByAge());
+        if (watermarks != null) {
+            stats.put("stale_skipped", watermarks.staleCount());
+        }
+        if (partitions != null) {
+            stats.put("partition_backlog", (long) partitions.backlog());
+        }
+        return stats;
+    }
+
+    private EventStore newEventStore(long seqBase) {
+        return eventStoreCapacity > 0
+                ? new EventStore(eventStoreCapacity, eventStoreRetention, seqBase)
+                : new EventStore(seqBase);
     }
 
     /**
      * Process a webhook event.
      *
-     * <p>Replace this with your business logic. In production, you would typically:
-     * <ol>
-     *   <li>Queue the event for async processing</li>
-     *   <li>Fetch the full entity from the API using the {@code url} field</li>
-     *   <li>Update your local state</li>
-     * </ol>
+     * <p>Replace this with your business logic. {@code Created} and
+     * {@code Updated} events are fetched and passed to the
+     * {@link EntityHandler} beans, {@code Updated} ones through the
+     * {@link UpdateCoalescer} when it is enabled, unless they are older than
+     * the newest event already seen for their entity. {@code Deleted} cancels
+     * a pending coalesced update. Other events are only logged. Runs on a
+     * {@link PartitionedExecutor} lane when {@code webhook.partitions} is set.
+     * Call {@link WebhookPayload#tree()} for fields beyond those in
+     * {@code event}.
+     *
+     * @return completes when the work started here, such as the fetch, has
+     *         finished
      */
-    private void processEvent(JsonNode payload) {
-        String event = payload.path("event").asText();
-        String entity = payload.path("entity").asText();
-        String url = payload.path("url").asText(null);
-
-        switch (event) {
-            case "Created", "Updated" -> {
-                if (url != null) {
-                    log.info("Fetch latest state from: {}", url);
-                    // Use PluginApiClient to fetch the entity via API
+    private CompletableFuture<Void> processEvent(WebhookEvent event, WebhookPayload payload, String namespace) {
+        if (isStale(event, namespace)) {
+            log.info("Stale event skipped: entity={} entity_id={} updated_at={} event_id={}",
+                    event.entityName(), event.entityIdText(), payload.updatedAt(), event.eventIdText());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        switch (event.event()) {
+            case CREATED -> {
+                return fetchLatest(event, payload, namespace);
+            }
+            case UPDATED -> {
+                return updateCoalescer != null
+                        ? updateCoalescer.submit(event, payload, namespace)
+                        : fetchLatest(event, payload, namespace);
+            }
+            case DELETED -> {
+                if (updateCoalescer != null) {
+                    updateCoalescer.cancel(event, namespace);
                 }
+                log.info("Entity deleted: {} {}", event.entityName(), event.entityIdText());
             }
-            case "Deleted" -> log.info("Entity deleted: {} {}", entity, payload.path("entity_id"));
-            case "Activated" -> log.info("Plugin activated");
-            case "Deactivated" -> log.info("Plugin deactivated");
-            case "DailyHeartBeat" -> log.info("Heartbeat received");
-            default -> log.warn("Unknown event type: {}", event);
+            case ACTIVATED -> log.info("Plugin activated");
+            case DEACTIVATED -> log.info("Plugin deactivated");
+            case DAILY_HEART_BEAT -> log.info("Heartbeat received");
+            case OTHER -> log.warn("Unknown event type: {}", event.eventName());
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /** Advance the entity's watermark; {@code true} if a create or update is older than it. */
+    private boolean isStale(WebhookEvent event, String namespace) {
+        if (watermarks == null) {
+            return false;
+        }
+        return switch (event.event()) {
+            case CREATED, UPDATED -> !watermarks.advance(event, namespace);
+            case DELETED -> {
+                watermarks.advance(event, namespace);
+                yield false;
+            }
+            default -> false;
+        };
+    }
+
+    /**
+     * Fetch the entity's latest state, in the background, for the
+     * {@link EntityHandler} beans. Without {@code webhook.fetch.enabled} the
+     * URL is only logged. Types without a URL are only fetched when batched.
+     * The handlers see each entity's fetches in the order they are submitted.
+     */
+    private CompletableFuture<Void> fetchLatest(WebhookEvent event, WebhookPayload payload, String namespace) {
+        String url = payload.url();
+        if (entityFetcher.isEnabled()) {
+            return entityFetcher.submit(event, url, namespace);
+        }
+        if (url != null) {
+            log.info("Fetch latest state from: {}", url);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /** Default instance ID of the JDBC store: the host name, which is stable for a pod or container. */
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Cannot determine the host name, set webhook.idempotency.instance-id", e);
         }
     }
 }
@@ -0,0 +1,351 @@
+package com.performativ.plugin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded in-process queue for asynchronous webhook acknowledgement.
+ *
+ * <p>When async mode is enabled, {@link WebhookController} only verifies the
+ * signature, hands the raw body to this queue and returns 200. A fixed pool of
+ * worker threads then parses the payload and passes it to
+ * {@link WebhookEventProcessor}, so slow handlers no longer count against the
+ * platform's 5 second delivery timeout.
+ *
+ * <p>Each registered tenant (see {@link TenantRegistry}) gets its own bounded
+ * lane; webhooks from unregistered tenants and without an {@code x-tenant}
+ * header share one more lane. The number of lanes is therefore fixed by the
+ * configuration, and a sender cannot claim extra lanes, or an extra share of
+ * the workers, by inventing tenant names. Workers take one webhook at a time
+ * from lanes that have work, in round-robin order, so a tenant running a bulk
+ * import only fills its own lane and cannot starve the others. A single busy
+ * tenant still gets every worker when it is the only one with work. Lanes
+ * hold their webhooks in linked queues, so an idle lane costs next to no
+ * memory whatever its capacity.
+ *
+ * <p>The queue is bounded per lane and in total: when either is full,
+ * {@link #offer} returns {@code false} and the controller answers with a
+ * retryable status instead of accepting work it cannot keep up with. Workers
+ * report their processing time to {@link WebhookAdmissionControl}, which
+ * rejects new webhooks before the queue actually fills up.
+ *
+ * <p>Without a journal, events still queued when the process stops are lost
+ * and left to the platform's retries (or the poller). With
+ * {@code webhook.journal.dir} set, each webhook is first written to a
+ * {@link WebhookJournal} and only then acknowledged, and it is marked done in
+ * the journal once it has been processed, including the lane, the entity
+ * fetch and the handlers. Entries left unprocessed by a crash or shutdown are
+ * processed again at startup, before any new webhook is accepted, so
+ * processing is at-least-once; the idempotency store absorbs the duplicates.
+ *
+ * <h3>Configuration</h3>
+ * <pre>
+ * WEBHOOK_ASYNC_ENABLED=true
+ * WEBHOOK_ASYNC_QUEUE_CAPACITY=10000   # optional, total across all tenants
+ * WEBHOOK_ASYNC_LANE_CAPACITY=2000     # optional, per tenant
+ * WEBHOOK_ASYNC_WORKERS=4              # optional, default 4
+ * WEBHOOK_JOURNAL_DIR=/data/journal    # optional, crash-safe acknowledgement
+ * </pre>
+ */
+@Component
+public class WebhookIngestionQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookIngestionQueue.class);
+
+    static final String TENANT_HEADER = "x-tenant";
+
+    /** Lane for webhooks without a registered tenant, i.e. in the shared namespace. */
+    private static final String SHARED_LANE = "";
+
+    private final WebhookEventProcessor processor;
+    private final TenantRegistry tenants;
+    private final ObjectMapper objectMapper;
+    private final WebhookAdmissionControl admissionControl;
+    private final boolean enabled;
+    private final int queueCapacity;
+    private final int laneCapacity;
+
+    /** Write-ahead journal, or {@code null} when disabled. */
+    private final WebhookJournal journal;
+
+    private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    /** Lanes with queued work, each present at most once, in round-robin order. */
+    private final LinkedBlockingQueue<Lane> ready = new LinkedBlockingQueue<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+    /** Webhooks accepted and not yet processed, whether queued or in progress. */
+    private final AtomicInteger unfinished = new AtomicInteger();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public WebhookIngestionQueue(
+            WebhookEventProcessor processor,
+            TenantRegistry tenants,
+            ObjectMapper objectMapper,
+            WebhookAdmissionControl admissionControl,
+            @Value("${webhook.async.enabled:false}") boolean enabled,
+            @Value("${webhook.async.queue-capacity:10000}") int queueCapacity,
+            @Value("${webhook.async.lane-capacity:2000}") int laneCapacity,
+            @Value("${webhook.async.workers:4}") int workers,
+            @Value("${webhook.journal.dir:}") String journalDir,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) throws IOException {
+        this.processor = processor;
+        this.tenants = tenants;
+        this.objectMapper = objectMapper;
+        this.admissionControl = admissionControl;
+        this.enabled = enabled;
+        this.queueCapacity = enabled ? queueCapacity : 0;
+        this.laneCapacity = enabled ? Math.min(laneCapacity, queueCapacity) : 0;
+
+        if (enabled && !journalDir.isBlank()) {
+            this.journal = new WebhookJournal(Path.of(journalDir));
+            // Finish what the previous run acknowledged but did not process
+            for (WebhookJournal.Entry entry : journal.replay()) {
+                unfinished.incrementAndGet();
+                ingest(new Task(entry.body(), entry.headers().get(TENANT_HEADER), entry.namespace(),
+                        entry.seq(), true));
+            }
+        } else {
+            this.journal = null;
+        }
+
+        if (enabled) {
+            Thread.Builder builder = virtualThreads
+                    ? Thread.ofVirtual().name("webhook-worker-", 1)
+                    : Thread.ofPlatform().daemon().name("webhook-worker-", 1);
+            for (int i = 1; i <= workers; i++) {
+                this.workers.add(builder.start(this::runWorker));
+            }
+            log.info("Async webhook processing enabled: workers={} queueCapacity={} laneCapacity={} journal={} virtual={}",
+                    workers, queueCapacity, this.laneCapacity, journal == null ? "off" : journalDir, virtualThreads);
+        }
+    }
+
+    /** Whether webhooks should be acknowledged before they are processed. */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Whether {@link #offer} blocks until the body is on disk. */
+    public boolean isJournaled() {
+        return journal != null;
+    }
+
+    /**
+     * Queue a verified raw webhook body for processing. With a journal, this
+     * returns only once the body is on disk.
+     *
+     * @param body      the raw request body (signature already verified)
+     * @param headers   webhook headers received with it
+     * @param namespace idempotency namespace from {@link TenantRegistry#namespaceFor},
+     *                  which also selects the lane
+     * @return {@code true} if the body was queued, {@code false} if the tenant's
+     *         lane or the queue as a whole is full
+     * @throws UncheckedIOException if the body could not be journaled
+     */
+    public boolean offer(byte[] body, Map<String, String> headers, String namespace) {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            return false;
+        }
+        String tenant = headers.get(TENANT_HEADER);
+        // Bounded: one lane per registered tenant plus the shared one
+        Lane lane = lanes.computeIfAbsent(laneKey(namespace), key -> new Lane());
+        // Reserve the lane slot before journaling, so a full lane costs no fsync
+        if (!lane.reserved.tryAcquire()) {
+            queued.decrementAndGet();
+            return false;
+        }
+        long seq = 0;
+        if (journal != null) {
+            try {
+                seq = journal.append(namespace, headers, body);
+            } catch (IOException e) {
+                lane.reserved.release();
+                queued.decrementAndGet();
+                throw new UncheckedIOException("Failed to journal webhook", e);
+            }
+        }
+        unfinished.incrementAndGet();
+        lane.tasks.add(new Task(body, tenant, namespace, seq, false));
+        schedule(lane);
+        return true;
+    }
+
+    /** Number of webhooks waiting for a worker, across all tenants. */
+    public int queueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Number of webhooks waiting for a worker in a tenant's lane, which is
+     * shared by all unregistered tenants.
+     *
+     * @param tenant the {@code x-tenant} header, may be {@code null}
+     */
+    public int queueDepth(String tenant) {
+        Lane lane = lanes.get(laneKey(tenants.namespaceFor(tenant)));
+        return lane == null ? 0 : laneCapacity - lane.reserved.availablePermits();
+    }
+
+    /** Maximum number of queued webhooks in total, or 0 when async mode is disabled. */
+    public int capacity() {
+        return queueCapacity;
+    }
+
+    /** Maximum number of queued webhooks per lane, or 0 when async mode is disabled. */
+    public int laneCapacity() {
+        return laneCapacity;
+    }
+
+    private void runWorker() {
+        while (running) {
+            Lane lane;
+            try {
+                lane = ready.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            Task task = lane.tasks.poll();
+            if (task != null) {
+                lane.reserved.release();
+            }
+            // Put the lane back at the end of the rotation before running the task,
+            // so other workers can keep draining it if no other tenant has work
+            lane.scheduled.set(false);
+            if (!lane.tasks.isEmpty()) {
+                schedule(lane);
+            }
+            if (task != null) {
+                queued.decrementAndGet();
+                ingest(task);
+            }
+        }
+    }
+
+    private void schedule(Lane lane) {
+        if (lane.scheduled.compareAndSet(false, true)) {
+            ready.add(lane);
+        }
+    }
+
+    private void ingest(Task task) {
+        CompletableFuture<Void> done;
+        try {
+            done = process(task);
+        } catch (RuntimeException e) {
+            done = CompletableFuture.failedFuture(e);
+        }
+        // Done either way: failures are logged and their claim released, as without a journal
+        done.whenComplete((ignored, failure) -> finish(task));
+    }
+
+    private void finish(Task task) {
+        if (task.journalSeq() > 0) {
+            try {
+                journal.ack(task.journalSeq());
+            } catch (IOException e) {
+                log.warn("Failed to mark journaled webhook {} as processed; it will be replayed",
+                        task.journalSeq(), e);
+            }
+        }
+        unfinished.decrementAndGet();
+    }
+
+    /** @return completes when the webhook has been processed */
+    private CompletableFuture<Void> process(Task task) {
+        WebhookPayload payload;
+        try {
+            payload = WebhookPayload.parse(objectMapper, task.body());
+        } catch (Exception e) {
+            log.error("Dropping queued webhook with invalid JSON from tenant={}", task.tenant(), e);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Counted in flight until the partition worker finishes, not just until the hand-off
+        long started = admissionControl.begin();
+        CompletableFuture<Void> done;
+        try {
+            done = processor.submitIfNew(payload, task.namespace(), task.replayed());
+        } catch (Exception e) {
+            admissionControl.end(started);
+            log.error("Failed to process queued webhook event_id={} tenant={}",
+                    payload.eventId(), task.tenant(), e);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (done == null) {
+            admissionControl.end(started);
+            return CompletableFuture.completedFuture(null);
+        }
+        done.whenComplete((ignored, failure) -> admissionControl.end(started));
+        return done;
+    }
+
+    /**
+     * Stop accepting work and give queued events a short grace period to finish.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (unfinished.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        running = false;
+        workers.forEach(Thread::interrupt);
+        if (journal != null) {
+            if (unfinished.get() > 0) {
+                log.info("Leaving {} unprocessed webhook(s) in the journal for the next start", unfinished.get());
+            }
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warn("Failed to close webhook journal", e);
+            }
+        } else if (queued.get() > 0) {
+            log.warn("Discarding {} queued webhook(s) on shutdown", queued.get());
+        }
+    }
+
+    private static String laneKey(String namespace) {
+        return namespace == null ? SHARED_LANE : namespace;
+    }
+
+    /**
+     * @param journalSeq the task's journal entry, or 0 without a journal
+     * @param replayed   whether it was replayed from the journal at startup
+     */
+    private record Task(byte[] body, String tenant, String namespace, long journalSeq, boolean replayed) {
+    }
+
+    private final class Lane {
+        /** Bounded by {@link #reserved}. */
+        final ConcurrentLinkedQueue<Task> tasks = new ConcurrentLinkedQueue<>();
+        /** Free places in {@link #tasks}, taken before a task is journaled. */
+        final Semaphore reserved = new Semaphore(laneCapacity);
+        final AtomicBoolean scheduled = new AtomicBoolean();
+    }
+}
@@ -0,0 +1,457 @@
+package com.performativ.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead journal of verified webhooks that have been acknowledged but
+ * not processed yet, so async acknowledgement does not lose events on a crash.
+ *
+ * <p>All file I/O happens on one journal-writer thread. {@link #append} hands
+ * the encoded record to it and waits until the record has been forced to
+ * disk. The writer takes every record queued since its last force, writes
+ * them to the current segment file and forces them together (group commit),
+ * so a burst of requests costs a few fsyncs rather than one each.
+ * {@link #ack} queues a record that an entry has been processed and does not
+ * wait; acks are not forced themselves, since a lost ack only causes a replay.
+ *
+ * <p>Callers never touch the {@link FileChannel}, so interrupting one of them
+ * (e.g. a request cancelled by its client) cannot close the channel under the
+ * others. An interrupted caller still waits for the outcome of its own append
+ * and then restores its interrupt status, so a 200 always means the record is
+ * on disk. Waiting on a future rather than a monitor also keeps waiting
+ * virtual threads off their carrier threads.
+ *
+ * <p>Each record is framed with its length and a CRC32C, so a record torn by a
+ * crash ends replay of its segment. Segments are rolled after
+ * {@value #SEGMENT_BYTES} bytes, and the oldest segments are deleted once
+ * every entry in them has been acknowledged. If a write or force fails, the
+ * appends in that group fail with the error and the writer continues in a new
+ * segment. On startup {@link #replay} returns the entries that were never
+ * acknowledged, in arrival order; new records always go to a fresh segment.
+ */
+public final class WebhookJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookJournal.class);
+
+    static final long SEGMENT_BYTES = 64L << 20;
+    private static final String SEGMENT_PREFIX = "webhooks-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private static final byte ENTRY = 1;
+    private static final byte ACK = 2;
+    /** Length and CRC of a record. */
+    private static final int FRAME_HEADER = 8;
+    /** Offset of the {@code seq} in a framed record, after the type. */
+    private static final int SEQ_OFFSET = FRAME_HEADER + 1;
+
+    /** Length written for a {@code null} string. */
+    private static final int NULL_STRING = -1;
+
+    /** Tells the writer to stop once the requests queued before it are written. */
+    private static final Request STOP = new Request(null, 0);
+
+    /**
+     * A journaled webhook.
+     *
+     * @param namespace idempotency namespace, {@code null} for the default one
+     */
+    public record Entry(long seq, String namespace, Map<String, String> headers, byte[] body) {
+    }
+
+    private final Path directory;
+
+    private final LinkedBlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private Thread writer;
+    private volatile boolean closed;
+
+    // Owned by the writer thread once it has started
+    /** Segments on disk, oldest first; the last one is being appended to. */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private FileChannel current;
+    private long lastSeq;
+
+    /** @param directory where segment files are kept (created if missing) */
+    public WebhookJournal(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Read all segments and return the entries that were never acknowledged,
+     * oldest first, then open a new segment and start the writer. Must be
+     * called once, before the first {@link #append}.
+     */
+    public synchronized List<Entry> replay() throws IOException {
+        List<Path> existing;
+        try (Stream<Path> files = Files.list(directory)) {
+            existing = files
+                    .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+
+        Map<Long, Entry> pending = new LinkedHashMap<>();
+        Map<Long, Segment> segmentOf = new LinkedHashMap<>();
+        for (Path path : existing) {
+            Segment segment = new Segment(path, segmentNumber(path));
+            segments.add(segment);
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+            while (data.remaining() >= FRAME_HEADER) {
+                int length = data.getInt(data.position());
+                int crc = data.getInt(data.position() + 4);
+                if (length <= 0 || length > data.remaining() - FRAME_HEADER) {
+                    break;
+                }
+                ByteBuffer record = data.slice(data.position() + FRAME_HEADER, length);
+                if (crc(record) != crc) {
+                    // Torn by a crash while it was being written
+                    break;
+                }
+                data.position(data.position() + FRAME_HEADER + length);
+
+                byte type = record.get();
+                long seq = record.getLong();
+                lastSeq = Math.max(lastSeq, seq);
+                if (type == ENTRY) {
+                    pending.put(seq, decodeEntry(seq, record));
+                    segmentOf.put(seq, segment);
+                    segment.pending++;
+                } else if (type == ACK && pending.remove(seq) != null) {
+                    segmentOf.remove(seq).pending--;
+                }
+            }
+        }
+
+        // Replayed entries are acknowledged like new ones, so their segments stay until then
+        for (Map.Entry<Long, Segment> e : segmentOf.entrySet()) {
+            e.getValue().lastSeq = Math.max(e.getValue().lastSeq, e.getKey());
+        }
+        roll();
+
+        writer = new Thread(this::runWriter, "webhook-journal");
+        writer.setDaemon(true);
+        writer.start();
+
+        log.info("Replaying {} unprocessed webhook(s) from {} journal segment(s) in {}",
+                pending.size(), existing.size(), directory);
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Append a verified webhook and wait until it is on disk.
+     *
+     * @param namespace idempotency namespace, {@code null} for the default one
+     * @param headers   webhook headers to keep with the body
+     * @param body      the raw request body
+     * @return the entry's {@code seq}, to pass to {@link #ack}
+     * @throws IOException if the record could not be written and forced
+     */
+    public long append(String namespace, Map<String, String> headers, byte[] body) throws IOException {
+        Request request = new Request(encodeEntry(namespace, headers, body), 0);
+        submit(request);
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return request.written.get();
+                } catch (InterruptedException e) {
+                    // The writer decides the outcome either way; report it truthfully
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IOException("Failed to journal webhook", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Record that an entry has been processed and need not be replayed. Does not wait. */
+    public void ack(long seq) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(FRAME_HEADER + 9);
+        record.position(FRAME_HEADER);
+        record.put(ACK).putLong(seq);
+        submit(new Request(frame(record), seq));
+    }
+
+    /** Write everything queued so far, then stop the writer and close the current segment. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (writer == null) {
+            return;
+        }
+        requests.add(STOP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the webhook journal");
+        }
+        if (current != null) {
+            current.force(false);
+            current.close();
+        }
+    }
+
+    private void submit(Request request) throws IOException {
+        if (closed || writer == null) {
+            throw new IOException("Webhook journal is not open");
+        }
+        requests.add(request);
+    }
+
+    /** Writer thread: write and force whatever is queued, group by group. */
+    private void runWriter() {
+        List<Request> group = new ArrayList<>();
+        while (true) {
+            try {
+                group.add(requests.take());
+            } catch (InterruptedException e) {
+                // Nobody else uses this thread; only STOP ends it
+                continue;
+            }
+            requests.drainTo(group);
+            boolean stop = group.remove(STOP);
+            writeGroup(group);
+            group.clear();
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    private void writeGroup(List<Request> group) {
+        List<Request> appended = new ArrayList<>();
+        try {
+            for (Request request : group) {
+                if (request.isAck()) {
+                    write(request.record);
+                    acknowledged(request.seq);
+                } else {
+                    long seq = ++lastSeq;
+                    request.record.putLong(SEQ_OFFSET, seq);
+                    write(frame(request.record));
+                    Segment segment = segments.peekLast();
+                    segment.pending++;
+                    segment.lastSeq = seq;
+                    request.seq = seq;
+                    appended.add(request);
+                }
+            }
+            if (!appended.isEmpty()) {
+                current.force(false);
+            }
+            // Only the oldest segments can go: later ones hold the acks of their entries
+            while (segments.size() > 1 && segments.peekFirst().pending == 0) {
+                Files.deleteIfExists(segments.removeFirst().path);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to write {} record(s) to the webhook journal in {}", group.size(), directory, e);
+            IOException failure = e instanceof IOException io ? io : new IOException(e);
+            for (Request request : group) {
+                if (!request.isAck() && !request.written.isDone()) {
+                    if (request.seq > 0) {
+                        // Not acknowledged to the sender, so not waiting for an ack either
+                        acknowledged(request.seq);
+                    }
+                    request.written.completeExceptionally(failure);
+                }
+            }
+            recover();
+            return;
+        }
+        for (Request request : appended) {
+            request.written.complete(request.seq);
+        }
+    }
+
+    /** Continue in a new segment after a failed write. */
+    private void recover() {
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.debug("Failed to close journal segment", e);
+            }
+            current = null;
+        }
+        try {
+            roll();
+        } catch (IOException e) {
+            log.error("Failed to start a new webhook journal segment in {}", directory, e);
+        }
+    }
+
+    /** Count an entry as processed in the segment holding it. */
+    private void acknowledged(long seq) {
+        for (Segment segment : segments) {
+            if (seq <= segment.lastSeq) {
+                segment.pending--;
+                return;
+            }
+        }
+    }
+
+    /** Writer thread only. */
+    private void write(ByteBuffer record) throws IOException {
+        if (current == null) {
+            roll();
+        } else if (current.position() + record.remaining() > SEGMENT_BYTES && current.position() > 0) {
+            roll();
+        }
+        while (record.hasRemaining()) {
+            current.write(record);
+        }
+    }
+
+    /** Start a new segment. Called during replay, then on the writer thread only. */
+    private void roll() throws IOException {
+        if (current != null) {
+            current.force(false);
+            current.close();
+            current = null;
+        }
+        long number = segments.isEmpty() ? 1 : segments.peekLast().number + 1;
+        Path path = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        current = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        Segment segment = new Segment(path, number);
+        segment.lastSeq = lastSeq;
+        segments.add(segment);
+        // Drop fully acknowledged segments left over from before a restart
+        while (segments.size() > 1 && segments.peekFirst().pending == 0) {
+            Files.deleteIfExists(segments.removeFirst().path);
+        }
+    }
+
+    /** An entry record without its {@code seq}, left unframed for the writer to complete. */
+    private static ByteBuffer encodeEntry(String namespace, Map<String, String> headers, byte[] body)
+            throws IOException {
+        List<byte[]> strings = new ArrayList<>(1 + headers.size() * 2);
+        strings.add(namespace == null ? null : namespace.getBytes(StandardCharsets.UTF_8));
+        headers.forEach((name, value) -> {
+            strings.add(name.getBytes(StandardCharsets.UTF_8));
+            strings.add(value.getBytes(StandardCharsets.UTF_8));
+        });
+        // Counts and lengths are ints, so no header value is too long to frame
+        long length = 1 + 8 + 4 + 4 + body.length;
+        for (byte[] string : strings) {
+            length += 4 + (string == null ? 0 : string.length);
+        }
+        if (FRAME_HEADER + length > Integer.MAX_VALUE) {
+            throw new IOException("Webhook too large to journal: " + length + " bytes");
+        }
+
+        ByteBuffer record = ByteBuffer.allocate((int) (FRAME_HEADER + length));
+        record.position(FRAME_HEADER);
+        record.put(ENTRY).putLong(0).putInt(headers.size());
+        for (byte[] string : strings) {
+            if (string == null) {
+                record.putInt(NULL_STRING);
+            } else {
+                record.putInt(string.length).put(string);
+            }
+        }
+        record.putInt(body.length).put(body);
+        return record;
+    }
+
+    private static Entry decodeEntry(long seq, ByteBuffer record) {
+        int headerCount = record.getInt();
+        String namespace = readString(record);
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (int i = 0; i < headerCount; i++) {
+            headers.put(readString(record), readString(record));
+        }
+        byte[] body = new byte[record.getInt()];
+        record.get(body);
+        return new Entry(seq, namespace, headers, body);
+    }
+
+    private static String readString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Fill in the length and CRC of a record written after the frame header, and flip it. */
+    private static ByteBuffer frame(ByteBuffer record) {
+        int length = record.position() - FRAME_HEADER;
+        record.putInt(0, length);
+        record.putInt(4, crc(record.slice(FRAME_HEADER, length)));
+        return record.flip();
+    }
+
+    private static int crc(ByteBuffer data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /** An entry to append ({@code seq} assigned by the writer) or an ack of entry {@code seq}. */
+    private static final class Request {
+        final ByteBuffer record;
+        final CompletableFuture<Long> written = new CompletableFuture<>();
+        long seq;
+
+        Request(ByteBuffer record, long ackedSeq) {
+            this.record = record;
+            this.seq = ackedSeq;
+        }
+
+        boolean isAck() {
+            return record.get(FRAME_HEADER) == ACK;
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long number;
+        /** Highest entry {@code seq} in this segment. */
+        long lastSeq;
+        /** Entries in this segment not acknowledged yet. */
+        int pending;
+
+        Segment(Path path, long number) {
+            this.path = path;
+            this.number = number;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.performativ.plugin;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The routing fields of a webhook payload, extracted without building a JSON tree.
+ *
+ * <p>{@link #parse} walks the body once with Jackson's streaming
+ * {@link JsonParser}, keeps only the top-level {@code event_id}, {@code entity},
+ * {@code entity_id}, {@code event}, {@code updated_at} and {@code url} fields and
+ * skips everything else (such as {@code custom_config}). Handlers that need the
+ * full document can call {@link #tree()}, which parses the raw body on first use.
+ *
+ * <p>Missing fields are returned as empty strings, except {@code url} which is
+ * {@code null} when absent or JSON {@code null}.
+ */
+public final class WebhookPayload {
+
+    private final String eventId;
+    private final String entity;
+    private final String entityId;
+    private final String event;
+    private final String updatedAt;
+    private final String url;
+
+    private final byte[] body;
+    private final ObjectMapper objectMapper;
+    private volatile JsonNode tree;
+
+    private WebhookPayload(String eventId, String entity, String entityId, String event,
+                           String updatedAt, String url,
+                           byte[] body, ObjectMapper objectMapper, JsonNode tree) {
+        this.eventId = eventId;
+        this.entity = entity;
+        this.entityId = entityId;
+        this.event = event;
+        this.updatedAt = updatedAt;
+        this.url = url;
+        this.body = body;
+        this.objectMapper = objectMapper;
+        this.tree = tree;
+    }
+
+    /**
+     * Extract the routing fields from a raw webhook body.
+     *
+     * @param objectMapper mapper used for streaming and for the lazy {@link #tree()}
+     * @param body         the raw JSON request body
+     * @throws IOException if the body is not a well-formed JSON object, or its
+     *                     {@code event_id} is longer than
+     *                     {@link IdempotencyStore#MAX_EVENT_ID_LENGTH}
+     */
+    public static WebhookPayload parse(ObjectMapper objectMapper, byte[] body) throws IOException {
+        String eventId = "";
+        String entity = "";
+        String entityId = "";
+        String event = "";
+        String updatedAt = "";
+        String url = null;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Webhook payload is not a JSON object");
+            }
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken value = parser.nextToken();
+                if (value.isStructStart()) {
+                    parser.skipChildren();
+                    continue;
+                }
+                switch (field) {
+                    case "event_id" -> eventId = scalarText(parser, value);
+                    case "entity" -> entity = scalarText(parser, value);
+                    case "entity_id" -> entityId = scalarText(parser, value);
+                    case "event" -> event = scalarText(parser, value);
+                    case "updated_at" -> updatedAt = scalarText(parser, value);
+                    case "url" -> url = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    default -> {
+                        // Not needed for routing; available through tree()
+                    }
+                }
+            }
+        }
+        if (eventId.length() > IdempotencyStore.MAX_EVENT_ID_LENGTH) {
+            throw new IOException("event_id is longer than " + IdempotencyStore.MAX_EVENT_ID_LENGTH + " characters");
+        }
+
+        return new WebhookPayload(eventId, entity, entityId, event, updatedAt, url,
+                body, objectMapper, null);
+    }
+
+    /**
+     * Wrap an already parsed payload (e.g. one embedded in a poller delivery).
+     */
+    public static WebhookPayload fromTree(JsonNode payload) {
+        return new WebhookPayload(
+                payload.path("event_id").asText(""),
+                payload.path("entity").asText(""),
+                payload.path("entity_id").asText(""),
+                payload.path("event").asText(""),
+                payload.path("updated_at").asText(""),
+                payload.path("url").asText(null),
+                null, null, payload);
+    }
+
+    public String eventId() {
+        return eventId;
+    }
+
+    public String entity() {
+        return entity;
+    }
+
+    public String entityId() {
+        return entityId;
+    }
+
+    public String event() {
+        return event;
+    }
+
+    public String updatedAt() {
+        return updatedAt;
+    }
+
+    /** API URL of the entity, or {@code null} for entity types without one. */
+    public String url() {
+        return url;
+    }
+
+    /**
+     * The full JSON document. Parsed from the raw body on first call.
+     */
+    public JsonNode tree() {
+        JsonNode result = tree;
+        if (result == null) {
+            try {
+                result = objectMapper.readTree(body);
+            } catch (IOException e) {
+                // The body already streamed cleanly in parse(), so this is unexpected
+                throw new UncheckedIOException(e);
+            }
+            tree = result;
+        }
+        return result;
+    }
+
+    private static String scalarText(JsonParser parser, JsonToken value) throws IOException {
+        return value == JsonToken.VALUE_NULL ? "" : parser.getText();
+    }
+}
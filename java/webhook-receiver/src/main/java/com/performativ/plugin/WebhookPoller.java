@@ -14,7 +14,10 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -38,7 +41,8 @@ import java.util.Map;
  * <ul>
  *   <li><b>Default</b> — extracts the {@code payload} from each delivery and
  *       passes it directly to {@link WebhookEventProcessor} (fast, skips
- *       signature verification).</li>
+ *       signature verification). The event IDs of each poll batch are
+ *       claimed from the {@link IdempotencyStore} in one call per tenant.</li>
  *   <li><b>{@code include_signature=true}</b> — the API returns the full
  *       reconstructed webhook POST (URL, payload, headers including
  *       {@code x-webhook-signature}). The poller replays each delivery as a
@@ -68,6 +72,7 @@ public class WebhookPoller {
     private static final Logger log = LoggerFactory.getLogger(WebhookPoller.class);
 
     private final WebhookEventProcessor processor;
+    private final TenantRegistry tenants;
     private final PluginApiClient apiClient;
     private final String pluginSlug;
     private final long instanceId;
@@ -86,6 +91,7 @@ public class WebhookPoller {
 
     public WebhookPoller(
             WebhookEventProcessor processor,
+            TenantRegistry tenants,
             @Value("${plugin.slug:}") String pluginSlug,
             @Value("${plugin.instance-id:0}") long instanceId,
             @Value("${token.broker-url:}") String tokenBrokerUrl,
@@ -99,6 +105,7 @@ public class WebhookPoller {
             @Value("${server.port:8080}") int serverPort) {
 
         this.processor = processor;
+        this.tenants = tenants;
         this.pluginSlug = pluginSlug;
         this.instanceId = instanceId;
         this.apiClient = new PluginApiClient(tokenBrokerUrl, apiBaseUrl,
@@ -136,14 +143,16 @@ public class WebhookPoller {
             int newCount = 0;
             String lastId = null;
 
-            for (JsonNode delivery : deliveries) {
-                lastId = delivery.path("id").asText(null);
-
-                if (includeSignature) {
+            if (includeSignature) {
+                for (JsonNode delivery : deliveries) {
+                    lastId = delivery.path("id").asText(null);
                     newCount += replayLocally(delivery, lastId) ? 1 : 0;
-                } else {
-                    newCount += processDirectly(delivery, lastId) ? 1 : 0;
                 }
+            } else {
+                for (JsonNode delivery : deliveries) {
+                    lastId = delivery.path("id").asText(null);
+                }
+                newCount = processDirectly(deliveries);
             }
 
             // Advance the cursor to the last delivery in this batch
@@ -165,15 +174,29 @@ public class WebhookPoller {
     }
 
     /**
-     * Default mode: extract the payload and pass directly to the processor.
+     * Default mode: extract the payloads and pass them directly to the
+     * processor, one batch per idempotency namespace.
      */
-    private boolean processDirectly(JsonNode delivery, String deliveryId) {
-        JsonNode payload = delivery.path("payload");
-        if (payload.isMissingNode() || payload.isNull()) {
-            log.debug("Delivery {} has no embedded payload, skipping", deliveryId);
-            return false;
+    private int processDirectly(JsonNode deliveries) {
+        // Use the same idempotency namespace as the push path when the tenant is known.
+        // Order is preserved within a tenant, which is all the processor relies on.
+        Map<String, List<WebhookPayload>> byNamespace = new LinkedHashMap<>();
+        for (JsonNode delivery : deliveries) {
+            JsonNode payload = delivery.path("payload");
+            if (payload.isMissingNode() || payload.isNull()) {
+                log.debug("Delivery {} has no embedded payload, skipping", delivery.path("id").asText(null));
+                continue;
+            }
+            String tenant = delivery.path("headers").path("x-tenant").asText(null);
+            byNamespace.computeIfAbsent(tenants.namespaceFor(tenant), ns -> new ArrayList<>())
+                    .add(WebhookPayload.fromTree(payload));
+        }
+
+        int processed = 0;
+        for (Map.Entry<String, List<WebhookPayload>> batch : byNamespace.entrySet()) {
+            processed += processor.processAllIfNew(batch.getValue(), batch.getKey());
         }
-        return processor.processIfNew(payload);
+        return processed;
     }
 
     /**
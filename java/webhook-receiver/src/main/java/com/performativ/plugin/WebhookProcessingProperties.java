@@ -0,0 +1,53 @@
+package com.performativ.plugin;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of {@link WebhookEventProcessor}: the idempotency store, the event
+ * store behind {@code /events}, update coalescing and staleness tracking.
+ * Bound from the {@code webhook.*} properties documented in
+ * {@code application.properties}.
+ */
+@ConfigurationProperties("webhook")
+public record WebhookProcessingProperties(
+        @DefaultValue Idempotency idempotency,
+        @DefaultValue Events events,
+        @DefaultValue Coalesce coalesce,
+        @DefaultValue Staleness staleness) {
+
+    /**
+     * {@code webhook.idempotency.*}
+     *
+     * @param store      {@code memory}, {@code file} or {@code jdbc}; empty to
+     *                   pick {@code file} when {@code dir} is set
+     * @param instanceId replica identity recorded with JDBC claims; empty for
+     *                   the host name
+     */
+    public record Idempotency(
+            @DefaultValue("") String store,
+            @DefaultValue("48") long retentionHours,
+            @DefaultValue("1000000") int maxEntries,
+            @DefaultValue("") String dir,
+            @DefaultValue("100") long fsyncIntervalMs,
+            @DefaultValue("") String jdbcUrl,
+            @DefaultValue("") String jdbcUser,
+            @DefaultValue("") String jdbcPassword,
+            @DefaultValue("4") int jdbcPoolSize,
+            @DefaultValue("") String instanceId) {
+    }
+
+    /** {@code webhook.events.*}; {@code 0} disables either bound. */
+    public record Events(
+            @DefaultValue("100000") int capacity,
+            @DefaultValue("0") long retentionMinutes) {
+    }
+
+    /** {@code webhook.coalesce.*}; a window of {@code 0} disables coalescing. */
+    public record Coalesce(@DefaultValue("0") long windowMs) {
+    }
+
+    /** {@code webhook.staleness.*}; {@code 0} entries disables staleness tracking. */
+    public record Staleness(@DefaultValue("100000") int maxEntries) {
+    }
+}
@@ -0,0 +1,64 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIndexOutOfBoundsException;
+import static org.assertj.core.api.Assertions.assertThatNullPointerException;
+
+class AppendOnlyLogTest {
+
+    @Test
+    void snapshotKeepsTheSizeItWasTakenAt() {
+        AppendOnlyLog<String> log = new AppendOnlyLog<>();
+        assertThat(log.append("a")).isZero();
+        assertThat(log.append("b")).isEqualTo(1);
+
+        List<String> snapshot = log.snapshot();
+        log.append("c");
+
+        assertThat(snapshot).containsExactly("a", "b");
+        assertThat(log.snapshot()).containsExactly("a", "b", "c");
+        assertThat(log.get(2)).isEqualTo("c");
+        assertThatIndexOutOfBoundsException().isThrownBy(() -> log.get(3));
+        assertThatNullPointerException().isThrownBy(() -> log.append((String) null));
+    }
+
+    @Test
+    void concurrentAppendsArePublishedWithoutGaps() throws Exception {
+        AppendOnlyLog<Integer> log = new AppendOnlyLog<>();
+        List<Future<?>> writers = new ArrayList<>();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            for (int t = 0; t < 8; t++) {
+                int writer = t;
+                writers.add(threads.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        log.append(writer * 10_000 + i);
+                        // Whatever is published so far is complete
+                        int size = log.size();
+                        assertThat(log.get(size - 1)).isNotNull();
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            threads.shutdown();
+        }
+
+        List<Integer> all = log.snapshot();
+        assertThat(all).hasSize(80_000);
+        Set<Integer> distinct = new HashSet<>(all);
+        assertThat(distinct).hasSize(80_000);
+    }
+}
@@ -0,0 +1,87 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DurableEventIdLogTest {
+
+    private static final long HOUR = 3_600_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysAppendedRecordsAndAppendsAfterThem() throws IOException {
+        long now = System.currentTimeMillis();
+        try (DurableEventIdLog log = open()) {
+            log.replay((msb, lsb, addedAt) -> { });
+            log.append(1, 10, now);
+            log.append(2, 20, now);
+            log.flush();
+        }
+        try (DurableEventIdLog log = open()) {
+            assertThat(replay(log)).containsExactly(1L, 2L);
+            log.append(3, 30, now);
+        }
+        try (DurableEventIdLog log = open()) {
+            assertThat(replay(log)).containsExactly(1L, 2L, 3L);
+        }
+    }
+
+    @Test
+    void skipsTornRecordsAndKeepsTheOnesAfterThem() throws IOException {
+        long now = System.currentTimeMillis();
+        try (DurableEventIdLog log = open()) {
+            log.replay((msb, lsb, addedAt) -> { });
+            for (int i = 1; i <= 3; i++) {
+                log.append(i, i * 10L, now);
+            }
+        }
+
+        // Half of the second record reached the disk
+        try (Stream<Path> files = Files.list(directory);
+             FileChannel segment = FileChannel.open(files.findFirst().orElseThrow(), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.allocate(8), DurableEventIdLog.RECORD_SIZE + 8);
+        }
+
+        try (DurableEventIdLog log = open()) {
+            assertThat(replay(log)).containsExactly(1L, 3L);
+        }
+    }
+
+    @Test
+    void doesNotReplayExpiredRecords() throws IOException {
+        long now = System.currentTimeMillis();
+        try (DurableEventIdLog log = open()) {
+            log.replay((msb, lsb, addedAt) -> { });
+            log.append(1, 10, now - 2 * HOUR);
+            log.append(2, 20, now);
+        }
+        try (DurableEventIdLog log = open()) {
+            assertThat(replay(log)).containsExactly(2L);
+        }
+    }
+
+    private DurableEventIdLog open() throws IOException {
+        return new DurableEventIdLog(directory, HOUR, 10_000, 10);
+    }
+
+    /** The msb of every replayed record. */
+    private static List<Long> replay(DurableEventIdLog log) throws IOException {
+        List<Long> replayed = new ArrayList<>();
+        log.replay((msb, lsb, addedAt) -> replayed.add(msb));
+        return replayed;
+    }
+}
@@ -0,0 +1,176 @@
+package com.performativ.plugin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EntityFetcherTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer api;
+
+    @BeforeEach
+    void startApi() throws IOException {
+        api = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        api.setExecutor(Executors.newCachedThreadPool());
+        api.createContext("/token-broker/oauth/token",
+                exchange -> respond(exchange, "{\"access_token\":\"token\",\"expires_in\":3600}"));
+        // Answers after ?delay= milliseconds
+        api.createContext("/api/v1/", exchange -> {
+            requests.incrementAndGet();
+            String query = exchange.getRequestURI().getQuery();
+            try {
+                Thread.sleep(Long.parseLong(query.replaceAll(".*delay=(\\d+).*", "$1")));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, "{\"data\":{\"id\":7}}");
+        });
+        api.start();
+    }
+
+    @AfterEach
+    void stopApi() {
+        api.stop(0);
+    }
+
+    @Test
+    void handsEachEntityOverInSubmissionOrder() throws Exception {
+        List<Long> handled = new CopyOnWriteArrayList<>();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        EntityHandler handler = (event, entity) -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            handled.add(event.updatedAtMicros());
+            concurrent.decrementAndGet();
+        };
+        EntityFetcher fetcher = fetcher(handler);
+        try {
+            List<CompletableFuture<Void>> done = new ArrayList<>();
+            for (int i = 1; i <= 10; i++) {
+                // Earlier fetches take longer, so they complete last
+                done.add(fetcher.submit(update(7, i), "/api/v1/clients/7?n=" + i + "&delay=" + (11 - i) * 20, "acme"));
+            }
+            CompletableFuture.allOf(done.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        } finally {
+            fetcher.shutdown();
+        }
+        assertThat(handled).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+        assertThat(maxConcurrent).hasValue(1);
+    }
+
+    @Test
+    void failedFetchDoesNotHoldUpLaterOnes() throws Exception {
+        List<Long> handled = new CopyOnWriteArrayList<>();
+        EntityFetcher fetcher = fetcher((event, entity) -> handled.add(event.updatedAtMicros()));
+        try {
+            CompletableFuture<Void> failing = fetcher.submit(update(7, 1), "/missing/7?delay=0", "acme");
+            CompletableFuture<Void> next = fetcher.submit(update(7, 2), "/api/v1/clients/7?delay=0", "acme");
+
+            next.get(10, TimeUnit.SECONDS);
+            assertThat(failing).isCompletedExceptionally();
+        } finally {
+            fetcher.shutdown();
+        }
+        assertThat(handled).containsExactly(2L);
+    }
+
+    @Test
+    void fullQueueMakesSubmittersWaitInsteadOfDropping() throws Exception {
+        AtomicInteger handled = new AtomicInteger();
+        EntityFetcher fetcher = fetcher((event, entity) -> handled.incrementAndGet(), 1, 2);
+        try {
+            List<CompletableFuture<Void>> done = new ArrayList<>();
+            for (int i = 1; i <= 10; i++) {
+                done.add(fetcher.submit(update(i, 1), "/api/v1/clients/" + i + "?delay=20", null));
+            }
+            CompletableFuture.allOf(done.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        } finally {
+            fetcher.shutdown();
+        }
+        assertThat(handled).hasValue(10);
+        assertThat(fetcher.droppedCount()).isZero();
+    }
+
+    @Test
+    void concurrentFetchesOfAnEntityShareOneRequest() throws Exception {
+        EntityFetcher fetcher = fetcher((event, entity) -> { });
+        try {
+            List<CompletableFuture<Void>> done = new ArrayList<>();
+            done.add(fetcher.submit(update(7, 5), "/api/v1/clients/7?delay=300", "acme"));
+            awaitRequests(1);
+            // Not newer than the request in flight, so its response will do
+            for (int i = 1; i <= 4; i++) {
+                done.add(fetcher.submit(update(7, i), "/api/v1/clients/7?delay=300", "acme"));
+            }
+            CompletableFuture.allOf(done.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        } finally {
+            fetcher.shutdown();
+        }
+        assertThat(requests).hasValue(1);
+        assertThat(fetcher.sharedCount()).isEqualTo(4);
+    }
+
+    @Test
+    void newerUpdateDoesNotShareARequestStartedBeforeIt() throws Exception {
+        EntityFetcher fetcher = fetcher((event, entity) -> { });
+        try {
+            CompletableFuture<Void> older = fetcher.submit(update(7, 1), "/api/v1/clients/7?delay=300", "acme");
+            awaitRequests(1);
+            // The response may predate this update, so it needs a request of its own
+            CompletableFuture<Void> newer = fetcher.submit(update(7, 2), "/api/v1/clients/7?delay=300", "acme");
+            CompletableFuture.allOf(older, newer).get(10, TimeUnit.SECONDS);
+        } finally {
+            fetcher.shutdown();
+        }
+        assertThat(requests).hasValue(2);
+        assertThat(fetcher.sharedCount()).isZero();
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        while (requests.get() < count) {
+            Thread.sleep(5);
+        }
+    }
+
+    private EntityFetcher fetcher(EntityHandler handler) {
+        return fetcher(handler, 8, 100);
+    }
+
+    private EntityFetcher fetcher(EntityHandler handler, int concurrency, int queueCapacity) {
+        String base = "http://127.0.0.1:" + api.getAddress().getPort();
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("handler", handler));
+        return new EntityFetcher(beans.getBeanProvider(EntityHandler.class), true, concurrency, 8, 5000, queueCapacity,
+                "", 50, 25, "filter[id]", base + "/token-broker", base, "client", "secret", "backend-api", false);
+    }
+
+    private static WebhookEvent update(long entityId, long updatedAtMicros) {
+        return new WebhookEvent(WebhookEvent.Entity.CLIENT, WebhookEvent.Event.UPDATED,
+                entityId, 0, 0, updatedAtMicros, null);
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
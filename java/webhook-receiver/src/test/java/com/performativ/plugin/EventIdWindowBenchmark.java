@@ -0,0 +1,116 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Memory per million {@code event_id}s and inserts per second of
+ * {@link EventIdWindow}, against the {@code ConcurrentHashMap} key set of
+ * {@code String}s it replaced.
+ *
+ * <p>Not run by {@code mvn test}; run it with
+ * {@code mvn test -Dtest=EventIdWindowBenchmark}, ideally with a fixed heap
+ * ({@code -DargLine=-Xmx2g}) so the memory figures are stable.
+ */
+class EventIdWindowBenchmark {
+
+    private static final int IDS = 1_000_000;
+    /** The bound applies per stripe, so leave room for IDs spreading unevenly. */
+    private static final int MAX_ENTRIES = IDS + IDS / 8;
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 3;
+
+    @Test
+    void memoryPerMillionIds() {
+        List<String> ids = ids();
+
+        long base = usedHeap();
+        Set<String> keySet = ConcurrentHashMap.newKeySet();
+        // Copies, as the set keeps the event_id parsed from each request
+        for (String id : ids) {
+            keySet.add(String.valueOf(id.toCharArray()));
+        }
+        long keySetBytes = usedHeap() - base;
+        Reference.reachabilityFence(keySet);
+        keySet = null;
+
+        base = usedHeap();
+        EventIdWindow window = new EventIdWindow(Duration.ofHours(48), MAX_ENTRIES);
+        ids.forEach(id -> window.add(null, id));
+        long windowBytes = usedHeap() - base;
+        assertThat(window.size()).isEqualTo(IDS);
+        Reference.reachabilityFence(window);
+
+        System.out.printf("ConcurrentHashMap key set: %d MB, %d bytes/id%n", keySetBytes >> 20, keySetBytes / IDS);
+        System.out.printf("EventIdWindow:             %d MB, %d bytes/id%n", windowBytes >> 20, windowBytes / IDS);
+    }
+
+    @Test
+    void insertsPerSecond() throws Exception {
+        List<String> ids = ids();
+        for (int round = 1; round <= ROUNDS; round++) {
+            Set<String> keySet = ConcurrentHashMap.newKeySet();
+            EventIdWindow window = new EventIdWindow(Duration.ofHours(48), MAX_ENTRIES);
+            System.out.printf("round %d: ConcurrentHashMap key set %d inserts/s, EventIdWindow %d inserts/s%n",
+                    round, insertsPerSecond(ids, keySet::add), insertsPerSecond(ids, id -> window.add(null, id)));
+        }
+    }
+
+    /** Insert all IDs from {@link #THREADS} threads, each taking every n-th ID. */
+    private static long insertsPerSecond(List<String> ids, Predicate<String> add) throws Exception {
+        long start = System.nanoTime();
+        try (ExecutorService threads = Executors.newFixedThreadPool(THREADS)) {
+            List<Future<Integer>> added = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int first = t;
+                added.add(threads.submit(() -> {
+                    int count = 0;
+                    for (int i = first; i < ids.size(); i += THREADS) {
+                        count += add.test(ids.get(i)) ? 1 : 0;
+                    }
+                    return count;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> count : added) {
+                total += count.get();
+            }
+            assertThat(total).isEqualTo(ids.size());
+        }
+        return ids.size() * 1_000_000_000L / (System.nanoTime() - start);
+    }
+
+    private static List<String> ids() {
+        List<String> ids = new ArrayList<>(IDS);
+        for (int i = 0; i < IDS; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,68 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventIdWindowTest {
+
+    @Test
+    void remembersEachIdOncePerNamespace() {
+        EventIdWindow window = new EventIdWindow(Duration.ofHours(1), 1000);
+        String id = UUID.randomUUID().toString();
+
+        assertThat(window.add("acme", id)).isTrue();
+        assertThat(window.add("acme", id)).isFalse();
+        assertThat(window.add("acme", id.toUpperCase())).isFalse();
+        assertThat(window.add("globex", id)).isTrue();
+        assertThat(window.add(null, id)).isTrue();
+        assertThat(window.add(null, "not-a-uuid")).isTrue();
+        assertThat(window.add(null, "not-a-uuid")).isFalse();
+        assertThat(window.size()).isEqualTo(4);
+    }
+
+    @Test
+    void forgottenIdsCanBeAddedAgain() {
+        EventIdWindow window = new EventIdWindow(Duration.ofHours(1), 100_000);
+        for (int i = 0; i < 10_000; i++) {
+            window.add(null, id(i));
+        }
+        for (int i = 0; i < 10_000; i += 2) {
+            window.remove(null, id(i));
+        }
+
+        assertThat(window.size()).isEqualTo(5_000);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(window.add(null, id(i))).as("id %d", i).isEqualTo(i % 2 == 0);
+        }
+    }
+
+    @Test
+    void evictsTheOldestIdsBeyondMaxEntries() {
+        EventIdWindow window = new EventIdWindow(Duration.ofHours(1), 1_600);
+        for (int i = 0; i < 100_000; i++) {
+            window.add(null, id(i));
+        }
+
+        assertThat(window.size()).isLessThanOrEqualTo(1_600);
+        assertThat(window.add(null, id(0))).isTrue();
+        assertThat(window.add(null, id(99_999))).isFalse();
+    }
+
+    @Test
+    void expiresIdsAfterTheRetention() throws InterruptedException {
+        EventIdWindow window = new EventIdWindow(Duration.ofMillis(20), 1000);
+        String id = UUID.randomUUID().toString();
+        window.add(null, id);
+
+        Thread.sleep(50);
+        assertThat(window.add(null, id)).isTrue();
+    }
+
+    private static String id(int i) {
+        return new UUID(0x5eedL * i, i).toString();
+    }
+}
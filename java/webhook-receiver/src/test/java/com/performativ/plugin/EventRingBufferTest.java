@@ -0,0 +1,86 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventRingBufferTest {
+
+    @Test
+    void keepsTheNewestEventsUpToTheCapacity() {
+        EventRingBuffer ring = new EventRingBuffer(4, Duration.ZERO);
+        assertThat(ring.lastSeq()).isZero();
+        assertThat(ring.firstSeq()).isGreaterThan(ring.lastSeq());
+
+        for (int i = 1; i <= 10; i++) {
+            assertThat(ring.append(event(i))).isEqualTo(i);
+        }
+
+        assertThat(ring.firstSeq()).isEqualTo(7);
+        assertThat(ring.lastSeq()).isEqualTo(10);
+        assertThat(ring.get(6)).isNull();
+        for (long seq = 7; seq <= 10; seq++) {
+            assertThat(ring.get(seq).entityId()).isEqualTo(seq);
+        }
+        assertThat(ring.get(11)).isNull();
+        assertThat(ring.evictedByCount()).isEqualTo(6);
+        assertThat(ring.evictedByAge()).isZero();
+    }
+
+    @Test
+    void dropsEventsOlderThanTheMaximumAge() throws InterruptedException {
+        EventRingBuffer ring = new EventRingBuffer(100, Duration.ofMillis(20));
+        ring.append(event(1));
+        ring.append(event(2));
+
+        Thread.sleep(50);
+        assertThat(ring.get(1)).isNull();
+        long fresh = ring.append(event(3));
+
+        assertThat(ring.firstSeq()).isEqualTo(fresh);
+        assertThat(ring.get(fresh).entityId()).isEqualTo(3);
+        assertThat(ring.evictedByAge()).isEqualTo(2);
+        assertThat(ring.evictedByCount()).isZero();
+    }
+
+    @Test
+    void concurrentAppendsGetDistinctSeqsAndAllArePublished() throws Exception {
+        EventRingBuffer ring = new EventRingBuffer(1_000, Duration.ZERO);
+        List<Future<?>> writers = new ArrayList<>();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            for (int t = 0; t < 8; t++) {
+                int writer = t;
+                writers.add(threads.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        ring.append(event(writer * 10_000L + i));
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            threads.shutdown();
+        }
+
+        assertThat(ring.lastSeq()).isEqualTo(80_000);
+        assertThat(ring.firstSeq()).isEqualTo(79_001);
+        assertThat(ring.evictedByCount()).isEqualTo(79_000);
+        for (long seq = ring.firstSeq(); seq <= ring.lastSeq(); seq++) {
+            assertThat(ring.get(seq)).isNotNull();
+        }
+    }
+
+    private static WebhookEvent event(long entityId) {
+        return new WebhookEvent(WebhookEvent.Entity.CLIENT, WebhookEvent.Event.UPDATED,
+                entityId, 0, entityId, WebhookEvent.NO_TIMESTAMP, null);
+    }
+}
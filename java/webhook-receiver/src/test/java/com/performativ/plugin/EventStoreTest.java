@@ -0,0 +1,182 @@
+package com.performativ.plugin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventStoreTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void indexingThatFellMoreThanTheCapacityBehindIsPrunedCompletely() throws Exception {
+        EventStore store = new EventStore(4, Duration.ZERO);
+
+        // Writers leave indexing to the lock holder, so indexing falls 10 events behind
+        store.indexLock.lock();
+        try {
+            Thread writer = new Thread(() -> {
+                for (int i = 1; i <= 10; i++) {
+                    store.append(event(i));
+                }
+            });
+            writer.start();
+            writer.join();
+        } finally {
+            store.indexLock.unlock();
+        }
+
+        assertThat(store.query("Client", null, null, 0, Long.MAX_VALUE)).hasSize(4);
+        // Entity, event and entity ID posting per retained event
+        assertThat(store.postingCount()).isEqualTo(12);
+
+        for (int i = 11; i <= 30; i++) {
+            store.append(event(i));
+        }
+        assertThat(store.query("Client", null, null, 0, Long.MAX_VALUE))
+                .extracting(e -> e.get("entity_id"))
+                .containsExactly("27", "28", "29", "30");
+        assertThat(store.postingCount()).isEqualTo(12);
+    }
+
+    @Test
+    void filteredQueriesMatchAScanOfAllEvents() {
+        String[] entities = {"Client", "Portfolio", "CustomWidget"};
+        String[] events = {"Created", "Updated", "Deleted", "Archived"};
+        String[] entityIds = {"1", "2", "17", "0042", "abc"};
+
+        for (EventStore store : List.of(new EventStore(), new EventStore(200, Duration.ZERO))) {
+            Random random = new Random(42);
+            for (int i = 0; i < 500; i++) {
+                store.append(event(entities[random.nextInt(entities.length)], events[random.nextInt(events.length)],
+                        entityIds[random.nextInt(entityIds.length)], i));
+            }
+            List<Map<String, String>> all = store.query(null, null, null, 0, Long.MAX_VALUE).toList();
+
+            for (String entity : entities) {
+                assertThat(store.query(entity, null, null, 0, Long.MAX_VALUE).toList())
+                        .isEqualTo(scan(all, e -> entity.equals(e.get("entity"))));
+                for (String event : events) {
+                    assertThat(store.query(entity, event, null, 0, Long.MAX_VALUE).toList())
+                            .isEqualTo(scan(all, e -> entity.equals(e.get("entity")) && event.equals(e.get("event"))));
+                }
+                for (String entityId : entityIds) {
+                    assertThat(store.query(entity, null, entityId, 0, Long.MAX_VALUE).toList())
+                            .isEqualTo(scan(all, e -> entity.equals(e.get("entity"))
+                                    && entityId.equals(e.get("entity_id"))));
+                }
+            }
+            for (String event : events) {
+                assertThat(store.query(null, event, null, 0, Long.MAX_VALUE).toList())
+                        .isEqualTo(scan(all, e -> event.equals(e.get("event"))));
+            }
+        }
+    }
+
+    @Test
+    void pagesThroughAPostingListWithAfterAndLimit() {
+        EventStore store = new EventStore();
+        for (int i = 1; i <= 100; i++) {
+            store.append(event(i % 2 == 0 ? "Client" : "Portfolio", "Updated", "7", i));
+        }
+
+        long after = 0;
+        int pages = 0;
+        int seen = 0;
+        List<Map<String, String>> page;
+        while (!(page = store.query("Client", null, "7", after, 15).toList()).isEmpty()) {
+            assertThat(page).allSatisfy(e -> assertThat(e).containsEntry("entity", "Client"));
+            after = Long.parseLong(page.get(page.size() - 1).get("seq"));
+            seen += page.size();
+            pages++;
+        }
+        assertThat(seen).isEqualTo(50);
+        assertThat(pages).isEqualTo(4);
+        assertThat(store.query("Client", null, null, 99, 10).toList()).extracting(e -> e.get("seq"))
+                .containsExactly("100");
+    }
+
+    @Test
+    void storeReplacingAClearedOneContinuesItsSeqs() {
+        for (EventStore cleared : List.of(new EventStore(), new EventStore(4, Duration.ZERO))) {
+            for (int i = 1; i <= 6; i++) {
+                cleared.append(event(i));
+            }
+            EventStore store = cleared.capacity() > 0
+                    ? new EventStore(4, Duration.ZERO, cleared.lastSeq())
+                    : new EventStore(cleared.lastSeq());
+            assertThat(store.lastSeq()).isEqualTo(6);
+            assertThat(store.query(null, null, null, 6, Long.MAX_VALUE)).isEmpty();
+
+            store.append(event(7));
+            store.append(event(8));
+
+            // A cursor from before the clear sees only the new events
+            assertThat(store.query(null, null, null, 5, Long.MAX_VALUE))
+                    .extracting(e -> e.get("seq"))
+                    .containsExactly("7", "8");
+            assertThat(store.query("Client", null, null, 7, Long.MAX_VALUE))
+                    .extracting(e -> e.get("seq"))
+                    .containsExactly("8");
+            assertThat(store.size()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void filteredQueryReadsPostingsLazilyWhileTheStoreChanges() {
+        EventStore store = new EventStore(1_000, Duration.ZERO);
+        for (int i = 1; i <= 1_000; i++) {
+            store.append(event(i));
+        }
+
+        Iterator<Map<String, String>> results = store.query("Client", null, null, 0, Long.MAX_VALUE).iterator();
+        List<Long> seqs = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            seqs.add(Long.parseLong(results.next().get("seq")));
+        }
+        // Evicts seqs 1..500 and adds events the query started too early to see
+        for (int i = 1_001; i <= 1_500; i++) {
+            store.append(event(i));
+        }
+        results.forEachRemaining(e -> seqs.add(Long.parseLong(e.get("seq"))));
+
+        assertThat(seqs).isSorted().doesNotHaveDuplicates();
+        assertThat(seqs).hasSize(800).startsWith(1L).endsWith(1_000L);
+        assertThat(seqs.get(300)).isEqualTo(501L);
+    }
+
+    private static List<Map<String, String>> scan(List<Map<String, String>> all, Predicate<Map<String, String>> filter) {
+        return all.stream().filter(filter).toList();
+    }
+
+    private static WebhookEvent event(String entity, String event, String entityId, int n) {
+        String json = "{\"entity\":\"" + entity + "\",\"event\":\"" + event + "\",\"entity_id\":\"" + entityId
+                + "\",\"event_id\":\"event-" + n + "\"}";
+        try {
+            return WebhookEvent.from(WebhookPayload.parse(MAPPER, json.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static WebhookEvent event(int id) {
+        String json = "{\"entity\":\"Client\",\"event\":\"Updated\",\"entity_id\":" + id
+                + ",\"event_id\":\"event-" + id + "\"}";
+        try {
+            return WebhookEvent.from(WebhookPayload.parse(MAPPER, json.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HostRequestLimiterTest {
+
+    @Test
+    void eachHostHasItsOwnSlots() throws Exception {
+        HostRequestLimiter limiter = new HostRequestLimiter(1, Duration.ofMillis(100));
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.send("https://a.example.com/api/v1/clients/1", () -> {
+                    holding.countDown();
+                    release.await();
+                    return "a";
+                });
+            } catch (IOException | InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try {
+            assertThat(holding.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // Another host is not held up by the busy one
+            assertThat(limiter.send("https://b.example.com/api/v1/clients/1", () -> "b")).isEqualTo("b");
+            // The busy host's only slot is taken
+            assertThatThrownBy(() -> limiter.send("https://A.example.com/api/v1/clients/2", () -> "a2"))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("a.example.com");
+        } finally {
+            release.countDown();
+        }
+        assertThat(slow.get(5, TimeUnit.SECONDS)).isEqualTo("a");
+        assertThat(limiter.send("https://a.example.com/api/v1/clients/2", () -> "a2")).isEqualTo("a2");
+    }
+}
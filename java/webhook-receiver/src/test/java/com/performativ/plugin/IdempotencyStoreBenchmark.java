@@ -0,0 +1,104 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput of each {@link IdempotencyStore}: event IDs claimed and then
+ * completed per second from several threads, one at a time and in batches,
+ * to size a shared store before rolling it out.
+ *
+ * <p>Not run by {@code mvn test}; run it with
+ * {@code mvn test -Dtest=IdempotencyStoreBenchmark}. The JDBC figures use the
+ * bundled H2, in memory and on disk; expect a networked database to be
+ * bounded by its round trips instead.
+ */
+class IdempotencyStoreBenchmark {
+
+    private static final Duration RETENTION = Duration.ofHours(48);
+    private static final int THREADS = 4;
+    private static final int[] BATCH_SIZES = {1, 50};
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "file", "jdbc-h2-memory", "jdbc-h2-file"})
+    void claimsPerSecond(String kind) throws Exception {
+        int ids = kind.startsWith("jdbc") ? 40_000 : 400_000;
+        try (IdempotencyStore store = open(kind)) {
+            for (int batchSize : BATCH_SIZES) {
+                // Once to warm up, once to measure
+                run(store, ids(ids), batchSize);
+                long perSecond = run(store, ids(ids), batchSize);
+                System.out.printf("%s, batches of %d, %d threads: %d claims/s%n", kind, batchSize, THREADS, perSecond);
+            }
+        }
+    }
+
+    /** Claim and complete all IDs, each thread taking the next batch. */
+    private static long run(IdempotencyStore store, List<String> ids, int batchSize) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService threads = Executors.newFixedThreadPool(THREADS)) {
+            List<Future<Integer>> claimed = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                claimed.add(threads.submit(() -> {
+                    int count = 0;
+                    int from;
+                    while ((from = next.getAndAdd(batchSize)) < ids.size()) {
+                        List<String> batch = ids.subList(from, Math.min(ids.size(), from + batchSize));
+                        boolean[] results = store.claim("acme", batch);
+                        for (int i = 0; i < results.length; i++) {
+                            if (results[i]) {
+                                store.complete("acme", batch.get(i));
+                                count++;
+                            }
+                        }
+                    }
+                    return count;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> count : claimed) {
+                total += count.get();
+            }
+            assertThat(total).isEqualTo(ids.size());
+        }
+        return ids.size() * 1_000_000_000L / (System.nanoTime() - start);
+    }
+
+    private IdempotencyStore open(String kind) throws IOException {
+        return switch (kind) {
+            case "memory" -> new InMemoryIdempotencyStore(RETENTION, 2_000_000);
+            case "file" -> new FileIdempotencyStore(directory, RETENTION, 2_000_000, 100);
+            case "jdbc-h2-memory" -> new JdbcIdempotencyStore(
+                    "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "", "benchmark", RETENTION, THREADS);
+            case "jdbc-h2-file" -> new JdbcIdempotencyStore(
+                    "jdbc:h2:" + directory.resolve("idempotency"), "sa", "", "benchmark", RETENTION, THREADS);
+            default -> throw new IllegalArgumentException(kind);
+        };
+    }
+
+    private static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+}
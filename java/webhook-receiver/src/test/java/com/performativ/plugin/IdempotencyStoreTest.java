@@ -0,0 +1,170 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyStoreTest {
+
+    private static final Duration RETENTION = Duration.ofHours(48);
+
+    @TempDir
+    Path directory;
+
+    private final String jdbcUrl = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "file", "jdbc"})
+    void claimsEachIdOncePerNamespace(String kind) throws Exception {
+        try (IdempotencyStore store = open(kind)) {
+            assertThat(store.claim("acme", List.of("a", "b", "a"))).containsExactly(true, true, false);
+            assertThat(store.claim("acme", List.of("b", "c"))).containsExactly(false, true);
+            assertThat(store.claim("globex", "a")).isTrue();
+            assertThat(store.claim(null, "a")).isTrue();
+            assertThat(store.claim(null, "a")).isFalse();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "file", "jdbc"})
+    void exactlyOneConcurrentClaimWins(String kind) throws Exception {
+        try (IdempotencyStore store = open(kind);
+             ExecutorService threads = Executors.newFixedThreadPool(8)) {
+            for (int round = 0; round < 20; round++) {
+                String id = UUID.randomUUID().toString();
+                List<Future<Boolean>> claims = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    claims.add(threads.submit(() -> store.claim("acme", id)));
+                }
+                int won = 0;
+                for (Future<Boolean> claim : claims) {
+                    won += claim.get() ? 1 : 0;
+                }
+                assertThat(won).isEqualTo(1);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"memory", "file", "jdbc"})
+    void releasedIdsCanBeClaimedAgainButCompletedOnesCannot(String kind) throws Exception {
+        try (IdempotencyStore store = open(kind)) {
+            store.claim("acme", List.of("failed", "processed"));
+            store.release("acme", "failed");
+            store.complete("acme", "processed");
+
+            assertThat(store.claim("acme", List.of("failed", "processed"))).containsExactly(true, false);
+        }
+    }
+
+    @Test
+    void fileStoreRemembersOnlyCompletedIdsAcrossRestarts() throws Exception {
+        try (IdempotencyStore store = open("file")) {
+            store.claim(null, List.of("processed", "unfinished"));
+            store.complete(null, "processed");
+        }
+
+        try (IdempotencyStore store = open("file")) {
+            assertThat(store.claim(null, List.of("processed", "unfinished"))).containsExactly(false, true);
+        }
+    }
+
+    @Test
+    void replicasSharingADatabaseClaimEachIdOnce() throws Exception {
+        try (IdempotencyStore first = jdbc("replica-1");
+             IdempotencyStore second = jdbc("replica-2")) {
+            assertThat(first.claim("acme", "a")).isTrue();
+            assertThat(second.claim("acme", List.of("a", "b"))).containsExactly(false, true);
+        }
+    }
+
+    @Test
+    void jdbcReplayTakesOverAnUnfinishedClaimButNotACompletedOne() throws Exception {
+        try (IdempotencyStore store = open("jdbc")) {
+            store.claim(null, List.of("unfinished", "processed"));
+            store.complete(null, "processed");
+
+            // A replica that never finished is not waited for on replay
+            assertThat(store.claim(null, "unfinished")).isFalse();
+            assertThat(store.reclaim(null, "unfinished")).isTrue();
+            assertThat(store.reclaim(null, "processed")).isFalse();
+        }
+    }
+
+    @Test
+    void jdbcReplayDoesNotTakeOverAnotherReplicasClaim() throws Exception {
+        try (IdempotencyStore first = jdbc("replica-1");
+             IdempotencyStore second = jdbc("replica-2")) {
+            assertThat(first.claim(null, "in-progress")).isTrue();
+
+            // Still being processed by the first replica
+            assertThat(second.reclaim(null, "in-progress")).isFalse();
+        }
+        try (IdempotencyStore restarted = jdbc("replica-1")) {
+            assertThat(restarted.reclaim(null, "in-progress")).isTrue();
+        }
+    }
+
+    @Test
+    void jdbcRejectsEventIdsLongerThanTheKeyColumn() throws Exception {
+        try (IdempotencyStore store = open("jdbc")) {
+            String tooLong = "x".repeat(IdempotencyStore.MAX_EVENT_ID_LENGTH + 1);
+            assertThatThrownBy(() -> store.claim("acme", List.of("a", tooLong)))
+                    .isInstanceOf(IllegalArgumentException.class);
+
+            // Nothing in the rejected batch was claimed
+            assertThat(store.claim("acme", List.of("a", "x".repeat(IdempotencyStore.MAX_EVENT_ID_LENGTH))))
+                    .containsExactly(true, true);
+        }
+    }
+
+    @Test
+    void onlyDuplicateKeyErrorsCountAsAlreadyClaimed() {
+        assertThat(JdbcIdempotencyStore.isUniqueViolation(new SQLException("duplicate", "23505"))).isTrue();
+        assertThat(JdbcIdempotencyStore.isUniqueViolation(new SQLException("MySQL duplicate", "23000", 1062))).isTrue();
+        assertThat(JdbcIdempotencyStore.isUniqueViolation(new SQLException("ORA-00001", "23000", 1))).isTrue();
+        assertThat(JdbcIdempotencyStore.isUniqueViolation(new SQLException("SQL Server", "23000", 2627))).isTrue();
+
+        assertThat(JdbcIdempotencyStore.isUniqueViolation(new SQLException("not null", "23502"))).isFalse();
+        assertThat(JdbcIdempotencyStore.isUniqueViolation(new SQLException("foreign key", "23503"))).isFalse();
+        assertThat(JdbcIdempotencyStore.isUniqueViolation(new SQLException("MySQL null", "23000", 1048))).isFalse();
+        assertThat(JdbcIdempotencyStore.isUniqueViolation(new SQLException("unknown", (String) null))).isFalse();
+
+        // Drivers may report the row's error as the next exception or the cause of a batch failure
+        SQLException chained = new SQLException("batch failed", "HY000");
+        chained.setNextException(new SQLException("duplicate", "23505"));
+        assertThat(JdbcIdempotencyStore.isUniqueViolation(chained)).isTrue();
+        BatchUpdateException batch = new BatchUpdateException("batch failed", new int[0],
+                new SQLException("duplicate", "23505"));
+        assertThat(JdbcIdempotencyStore.isUniqueViolation(batch)).isTrue();
+    }
+
+    private IdempotencyStore jdbc(String instanceId) {
+        return new JdbcIdempotencyStore(jdbcUrl, "sa", "", instanceId, RETENTION, 4);
+    }
+
+    private IdempotencyStore open(String kind) throws IOException {
+        return switch (kind) {
+            case "memory" -> new InMemoryIdempotencyStore(RETENTION, 10_000);
+            case "file" -> new FileIdempotencyStore(directory, RETENTION, 10_000, 10);
+            case "jdbc" -> jdbc("replica-1");
+            default -> throw new IllegalArgumentException(kind);
+        };
+    }
+}
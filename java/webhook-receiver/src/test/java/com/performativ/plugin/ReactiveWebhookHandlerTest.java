@@ -0,0 +1,49 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.UUID;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.main.web-application-type=reactive",
+        "webhook.signing-key=",
+        "webhook.signing-keys=",
+        "webhook.tenant-keys=",
+        "webhook.max-body-size=1MB",
+        "logging.level.com.performativ.plugin=WARN"})
+class ReactiveWebhookHandlerTest {
+
+    @Autowired
+    WebTestClient client;
+
+    @Test
+    void acceptsBodiesBeyondTheCodecDefaultUpToTheConfiguredLimit() {
+        String eventId = UUID.randomUUID().toString();
+        // Larger than the 256 KB default of the WebFlux codecs
+        client.post().uri("/webhook").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body(eventId, 300 * 1024))
+                .exchange()
+                .expectStatus().isOk();
+
+        client.get().uri("/events?entity=Client&entity_id=1").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$[?(@.event_id == '" + eventId + "')]").exists();
+    }
+
+    @Test
+    void rejectsBodiesOverTheLimit() {
+        client.post().uri("/webhook").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body(UUID.randomUUID().toString(), 1536 * 1024))
+                .exchange()
+                .expectStatus().isEqualTo(413);
+    }
+
+    private static String body(String eventId, int padding) {
+        return "{\"event_id\":\"" + eventId + "\",\"entity\":\"Client\",\"entity_id\":1,\"event\":\"Updated\","
+                + "\"custom_config\":{\"padding\":\"" + "x".repeat(padding) + "\"}}";
+    }
+}
@@ -0,0 +1,141 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Side-by-side load test of the servlet receiver ({@link WebhookController}
+ * on Tomcat) and the reactive one ({@link ReactiveWebhookHandler} on Netty):
+ * signed webhooks are posted to {@code /webhook} from a fixed number of
+ * concurrent connections, and the throughput and latency percentiles of each
+ * are reported.
+ *
+ * <p>Not run by {@code mvn test}; run it with
+ * {@code mvn test -Dtest=ReceiverLoadBenchmark}. The load generator shares
+ * the machine with the receiver, so compare the two engines with each other
+ * rather than reading the figures as absolute capacity.
+ */
+class ReceiverLoadBenchmark {
+
+    private static final String SIGNING_KEY = "benchmark-signing-key";
+    private static final int[] CONNECTIONS = {50, 500};
+    private static final long WARM_UP_NANOS = 2_000_000_000L;
+    private static final long MEASURE_NANOS = 5_000_000_000L;
+
+    private final SignatureVerifier signer = new SignatureVerifier(SIGNING_KEY);
+    private final AtomicLong nextEventId = new AtomicLong();
+
+    @Test
+    void servletAgainstReactive() throws Exception {
+        for (String engine : List.of("servlet", "reactive")) {
+            try (ConfigurableApplicationContext receiver = start(engine)) {
+                URI webhook = URI.create("http://127.0.0.1:"
+                        + receiver.getEnvironment().getProperty("local.server.port") + "/webhook");
+                for (int connections : CONNECTIONS) {
+                    System.out.printf("%s, %d connections: %s%n", engine, connections, load(webhook, connections));
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String engine) {
+        return new SpringApplicationBuilder(Application.class).run(
+                "--spring.main.web-application-type=" + engine,
+                "--server.port=0",
+                "--webhook.signing-key=" + SIGNING_KEY,
+                // Measure the receivers, not 429s or per-event logging
+                "--webhook.admission.max-in-flight=100000",
+                "--logging.level.com.performativ.plugin=WARN");
+    }
+
+    /** Post from {@code connections} clients for the measuring period, after a warm-up. */
+    private String load(URI webhook, int connections) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        Map<Integer, AtomicInteger> statuses = new ConcurrentHashMap<>();
+        AtomicInteger errors = new AtomicInteger();
+        long start = System.nanoTime();
+        long measureFrom = start + WARM_UP_NANOS;
+        long end = measureFrom + MEASURE_NANOS;
+
+        List<Future<long[]>> latencies = new ArrayList<>();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < connections; c++) {
+                latencies.add(clients.submit(() -> {
+                    long[] measured = new long[1024];
+                    int count = 0;
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        try {
+                            int status = client.send(request(webhook), HttpResponse.BodyHandlers.discarding())
+                                    .statusCode();
+                            statuses.computeIfAbsent(status, s -> new AtomicInteger()).incrementAndGet();
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        if (now >= measureFrom) {
+                            if (count == measured.length) {
+                                measured = Arrays.copyOf(measured, count * 2);
+                            }
+                            measured[count++] = System.nanoTime() - now;
+                        }
+                    }
+                    return Arrays.copyOf(measured, count);
+                }));
+            }
+        }
+
+        long[] all = new long[0];
+        for (Future<long[]> connection : latencies) {
+            long[] measured = connection.get();
+            int offset = all.length;
+            all = Arrays.copyOf(all, offset + measured.length);
+            System.arraycopy(measured, 0, all, offset, measured.length);
+        }
+        Arrays.sort(all);
+        return String.format("%d requests/s, p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms, statuses %s, errors %d",
+                all.length * 1_000_000_000L / MEASURE_NANOS,
+                percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999),
+                new TreeMap<>(statuses), errors.get());
+    }
+
+    private HttpRequest request(URI webhook) {
+        long id = nextEventId.incrementAndGet();
+        byte[] body = ("{\"event_id\":\"" + new UUID(0x1234L, id) + "\",\"entity\":\"Client\","
+                + "\"entity_id\":" + id % 5000 + ",\"event\":\"Updated\"}").getBytes(StandardCharsets.UTF_8);
+        return HttpRequest.newBuilder(webhook)
+                .header("Content-Type", "application/json")
+                .header("x-webhook-signature", signer.sign(body))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, (long) (sorted.length * quantile))] / 1e6;
+    }
+}
@@ -0,0 +1,95 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifying a webhook signature with {@link SignatureVerifier}'s pooled
+ * {@link Mac}s, against getting and initialising a {@code Mac} per webhook.
+ *
+ * <p>Not run by {@code mvn test}; run it with
+ * {@code mvn test -Dtest=SignatureVerifierBenchmark}.
+ */
+class SignatureVerifierBenchmark {
+
+    private static final String KEY = "test-signing-key-12345";
+
+    private static final byte[] BODY = ("{\"event_id\":\"550e8400-e29b-41d4-a716-446655440000\","
+            + "\"entity\":\"Client\",\"entity_id\":12345,\"event\":\"Created\","
+            + "\"updated_at\":\"2024-01-15T10:30:00.000000Z\","
+            + "\"url\":\"https://api.example.com/api/v1/clients/12345\"}").getBytes(StandardCharsets.UTF_8);
+
+    private static final int ROUNDS = 5;
+    private static final int OPERATIONS = 500_000;
+
+    @Test
+    void pooledMacsAgainstMacPerWebhook() throws Exception {
+        SignatureVerifier verifier = new SignatureVerifier(KEY);
+        String signature = verifier.sign(BODY);
+        assertThat(freshMacSignature()).isEqualTo(signature);
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            long fresh = nanosPerOperation(() -> freshMacSignature().equals(signature));
+            long pooled = nanosPerOperation(() -> verifier.verify(BODY, signature));
+            System.out.printf("round %d: Mac per webhook %d ns/op, pooled %d ns/op%n", round, fresh, pooled);
+        }
+    }
+
+    /** With a virtual thread per request, each verification runs on a thread that has no {@code Mac} yet. */
+    @Test
+    void pooledMacsWithAThreadPerVerification() throws Exception {
+        SignatureVerifier verifier = new SignatureVerifier(KEY);
+        String signature = verifier.sign(BODY);
+        int verifications = OPERATIONS / 5;
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            List<Future<Boolean>> results = new ArrayList<>(verifications);
+            try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < verifications; i++) {
+                    results.add(threads.submit(() -> verifier.verify(BODY, signature)));
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            for (Future<Boolean> result : results) {
+                assertThat(result.get()).isTrue();
+            }
+            System.out.printf("round %d: virtual thread per verification %d verifications/s%n",
+                    round, verifications * 1_000_000_000L / elapsed);
+        }
+    }
+
+    private static long nanosPerOperation(Operation operation) throws Exception {
+        boolean valid = true;
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            valid &= operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertThat(valid).isTrue();
+        return elapsed / OPERATIONS;
+    }
+
+    /** What the verifier did before it kept initialised {@code Mac}s. */
+    private static String freshMacSignature() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(KEY.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return HexFormat.of().formatHex(mac.doFinal(BODY));
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        boolean run() throws Exception;
+    }
+}
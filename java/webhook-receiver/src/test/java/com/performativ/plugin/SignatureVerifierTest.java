@@ -0,0 +1,46 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SignatureVerifierTest {
+
+    private static final byte[] BODY = "{\"event_id\":\"a\",\"entity\":\"Client\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final SignatureVerifier verifier = new SignatureVerifier("test-signing-key");
+
+    @Test
+    void acceptsItsOwnSignatureInEitherCase() {
+        String signature = verifier.sign(BODY);
+
+        assertThat(verifier.verify(BODY, signature)).isTrue();
+        assertThat(verifier.verify(BODY, signature.toUpperCase())).isTrue();
+    }
+
+    @Test
+    void rejectsSignaturesOfOtherBodiesOrKeys() {
+        byte[] other = "{\"event_id\":\"b\",\"entity\":\"Client\"}".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(verifier.verify(other, verifier.sign(BODY))).isFalse();
+        assertThat(verifier.verify(BODY, new SignatureVerifier("other-key").sign(BODY))).isFalse();
+    }
+
+    @Test
+    void rejectsMalformedSignatures() {
+        String signature = verifier.sign(BODY);
+
+        assertThat(verifier.verify(BODY, signature.substring(1))).isFalse();
+        assertThat(verifier.verify(BODY, signature + "0")).isFalse();
+        assertThat(verifier.verify(BODY, "g" + signature.substring(1))).isFalse();
+        assertThat(verifier.verify(BODY, "\u00e9" + signature.substring(1))).isFalse();
+    }
+
+    @Test
+    void acceptsUnsignedWebhooks() {
+        assertThat(verifier.verify(BODY, null)).isTrue();
+        assertThat(verifier.verify(BODY, " ")).isTrue();
+    }
+}
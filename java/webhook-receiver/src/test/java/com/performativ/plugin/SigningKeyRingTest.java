@@ -0,0 +1,46 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class SigningKeyRingTest {
+
+    private static final byte[] BODY = "{\"event_id\":\"a\",\"entity\":\"Client\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void acceptsSignaturesOfEveryActiveKey() {
+        SigningKeyRing keys = new SigningKeyRing(List.of("old-key", "new-key"));
+
+        assertThat(keys.verify(BODY, new SignatureVerifier("old-key").sign(BODY))).isTrue();
+        assertThat(keys.verify(BODY, new SignatureVerifier("new-key").sign(BODY))).isTrue();
+        assertThat(keys.verify(BODY, new SignatureVerifier("retired-key").sign(BODY))).isFalse();
+    }
+
+    @Test
+    void countsHitsPerKeyWithoutExposingTheKeys() {
+        SigningKeyRing keys = new SigningKeyRing(List.of("old-key", "new-key"));
+        String signature = new SignatureVerifier("new-key").sign(BODY);
+        keys.verify(BODY, signature);
+        keys.verify(BODY, signature);
+
+        List<SigningKeyRing.KeyUsage> usage = keys.usage();
+        assertThat(usage).extracting(SigningKeyRing.KeyUsage::hits).containsExactly(0L, 2L);
+        assertThat(usage.get(0).lastUsedAt()).isNull();
+        assertThat(usage.get(1).lastUsedAt()).isNotNull();
+        assertThat(usage).extracting(SigningKeyRing.KeyUsage::fingerprint)
+                .containsExactly(SigningKeyRing.fingerprint("old-key"), SigningKeyRing.fingerprint("new-key"))
+                .allSatisfy(fingerprint -> assertThat(fingerprint).hasSize(8).doesNotContain("key"));
+    }
+
+    @Test
+    void ignoresBlankAndDuplicateKeys() {
+        assertThat(new SigningKeyRing(Arrays.asList("key", " ", null, "key")).size()).isEqualTo(1);
+        assertThatIllegalArgumentException().isThrownBy(() -> new SigningKeyRing(List.of(" ")));
+    }
+}
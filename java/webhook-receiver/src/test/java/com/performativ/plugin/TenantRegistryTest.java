@@ -0,0 +1,54 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class TenantRegistryTest {
+
+    private static final byte[] BODY = "{\"event_id\":\"a\",\"entity\":\"Client\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void registeredTenantsAreVerifiedOnlyWithTheirOwnKeys() {
+        TenantRegistry tenants = new TenantRegistry("default-key", "", "acme=key-a,acme=key-a2,globex=key-g");
+
+        assertThat(tenants.keysFor("acme").size()).isEqualTo(2);
+        assertThat(tenants.keysFor("acme").verify(BODY, signed("key-a2"))).isTrue();
+        assertThat(tenants.keysFor("acme").verify(BODY, signed("key-g"))).isFalse();
+        assertThat(tenants.keysFor("acme").verify(BODY, signed("default-key"))).isFalse();
+        assertThat(tenants.keysFor("mallory").verify(BODY, signed("default-key"))).isTrue();
+        assertThat(tenants.keysFor(null).verify(BODY, signed("key-a"))).isFalse();
+        assertThat(tenants.keyUsage()).containsOnlyKeys(TenantRegistry.DEFAULT_TENANT, "acme", "globex");
+    }
+
+    @Test
+    void onlyRegisteredTenantsGetTheirOwnNamespace() {
+        TenantRegistry tenants = new TenantRegistry("default-key", "", "acme=key-a");
+
+        assertThat(tenants.namespaceFor("acme")).isEqualTo("acme");
+        assertThat(tenants.namespaceFor("mallory")).isNull();
+        assertThat(tenants.namespaceFor(null)).isNull();
+    }
+
+    @Test
+    void verificationIsDisabledWithoutKeys() {
+        TenantRegistry tenants = new TenantRegistry("", "", "");
+
+        assertThat(tenants.keysFor("acme")).isNull();
+        assertThat(tenants.keyUsage()).isEmpty();
+    }
+
+    @Test
+    void tenantKeyEntriesNeedATenantAndAKey() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new TenantRegistry("", "", "acme"));
+        assertThatIllegalArgumentException().isThrownBy(() -> new TenantRegistry("", "", "=key"));
+        assertThatIllegalArgumentException().isThrownBy(() -> new TenantRegistry("", "", "acme="));
+    }
+
+    private static String signed(String key) {
+        return new SignatureVerifier(key).sign(BODY);
+    }
+}
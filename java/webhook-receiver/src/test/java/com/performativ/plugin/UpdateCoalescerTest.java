@@ -0,0 +1,112 @@
+package com.performativ.plugin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpdateCoalescerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+
+    @Test
+    void keepsUpdatesOfDifferentNamespacesApart() throws Exception {
+        try (UpdateCoalescer coalescer = new UpdateCoalescer(Duration.ofMillis(50), this::handle)) {
+            CompletableFuture<Void> acme = coalescer.submit(update(7, "event-1"), payload(7, "event-1"), "acme");
+            CompletableFuture<Void> globex = coalescer.submit(update(7, "event-2"), payload(7, "event-2"), "globex");
+
+            CompletableFuture.allOf(acme, globex).get(5, TimeUnit.SECONDS);
+        }
+        assertThat(handled).containsExactlyInAnyOrder("acme:event-1", "globex:event-2");
+    }
+
+    @Test
+    void handsOverOnlyTheNewestUpdateOfABurst() throws Exception {
+        try (UpdateCoalescer coalescer = new UpdateCoalescer(Duration.ofMillis(50), this::handle)) {
+            CompletableFuture<Void> first = coalescer.submit(update(7, "event-1", 1), payload(7, "event-1", 1), null);
+            CompletableFuture<Void> second = coalescer.submit(update(7, "event-3", 3), payload(7, "event-3", 3), null);
+            // Older than the pending one, so it does not replace it
+            CompletableFuture<Void> third = coalescer.submit(update(7, "event-2", 2), payload(7, "event-2", 2), null);
+
+            assertThat(second).isSameAs(first);
+            assertThat(third).isSameAs(first);
+            first.get(5, TimeUnit.SECONDS);
+            assertThat(coalescer.coalesced()).isEqualTo(2);
+        }
+        assertThat(handled).containsExactly("null:event-3");
+    }
+
+    @Test
+    void deletionCancelsThePendingUpdate() throws Exception {
+        try (UpdateCoalescer coalescer = new UpdateCoalescer(Duration.ofMillis(50), this::handle)) {
+            CompletableFuture<Void> window = coalescer.submit(update(7, "event-1", 1), payload(7, "event-1", 1), "acme");
+            coalescer.cancel(update(7, "event-2", 2), "globex");
+            coalescer.cancel(update(7, "event-3", 3), "acme");
+
+            assertThat(window).isCompleted();
+            Thread.sleep(150);
+        }
+        assertThat(handled).isEmpty();
+    }
+
+    @Test
+    void windowCompletesOnceTheHandlersWorkHasFinished() throws Exception {
+        CompletableFuture<Void> work = new CompletableFuture<>();
+        try (UpdateCoalescer coalescer = new UpdateCoalescer(Duration.ofMillis(10), (event, payload, namespace) -> {
+            handled.add(payload.eventId());
+            return work;
+        })) {
+            CompletableFuture<Void> window = coalescer.submit(update(7, "event-1", 1), payload(7, "event-1", 1), null);
+            while (handled.isEmpty()) {
+                Thread.sleep(5);
+            }
+            assertThat(window).isNotDone();
+
+            work.complete(null);
+            window.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void closeHandsOverPendingUpdates() throws Exception {
+        CompletableFuture<Void> window;
+        try (UpdateCoalescer coalescer = new UpdateCoalescer(Duration.ofHours(1), this::handle)) {
+            window = coalescer.submit(update(7, "event-1", 1), payload(7, "event-1", 1), null);
+        }
+        assertThat(window).isCompleted();
+        assertThat(handled).containsExactly("null:event-1");
+    }
+
+    private CompletableFuture<Void> handle(WebhookEvent event, WebhookPayload payload, String namespace) {
+        handled.add(namespace + ":" + payload.eventId());
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static WebhookEvent update(int id, String eventId) throws IOException {
+        return update(id, eventId, 0);
+    }
+
+    private static WebhookPayload payload(int id, String eventId) throws IOException {
+        return payload(id, eventId, 0);
+    }
+
+    private static WebhookEvent update(int id, String eventId, int second) throws IOException {
+        return WebhookEvent.from(payload(id, eventId, second));
+    }
+
+    private static WebhookPayload payload(int id, String eventId, int second) throws IOException {
+        String json = "{\"entity\":\"Client\",\"event\":\"Updated\",\"entity_id\":" + id
+                + ",\"event_id\":\"" + eventId + "\",\"updated_at\":\"2026-01-01T00:00:0" + second + "Z\"}";
+        return WebhookPayload.parse(MAPPER, json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,42 @@
+package com.performativ.plugin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpdatedAtWatermarksTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void olderEventForTheSameEntityIsStale() throws IOException {
+        UpdatedAtWatermarks watermarks = new UpdatedAtWatermarks(100);
+
+        assertThat(watermarks.advance(update(7, "2026-01-01T10:00:00Z"), null)).isTrue();
+        assertThat(watermarks.advance(update(7, "2026-01-01T09:00:00Z"), null)).isFalse();
+        assertThat(watermarks.advance(update(7, "2026-01-01T10:00:00Z"), null)).isTrue();
+        assertThat(watermarks.staleCount()).isEqualTo(1);
+    }
+
+    @Test
+    void namespacesHaveTheirOwnWatermarks() throws IOException {
+        UpdatedAtWatermarks watermarks = new UpdatedAtWatermarks(100);
+
+        assertThat(watermarks.advance(update(7, "2026-01-01T10:00:00Z"), "acme")).isTrue();
+        // Same entity ID from other tenants, older than acme's
+        assertThat(watermarks.advance(update(7, "2026-01-01T09:00:00Z"), "globex")).isTrue();
+        assertThat(watermarks.advance(update(7, "2026-01-01T09:00:00Z"), null)).isTrue();
+        assertThat(watermarks.advance(update(7, "2026-01-01T09:30:00Z"), "acme")).isFalse();
+        assertThat(watermarks.size()).isEqualTo(3);
+    }
+
+    private static WebhookEvent update(int id, String updatedAt) throws IOException {
+        String json = "{\"entity\":\"Client\",\"event\":\"Updated\",\"entity_id\":" + id
+                + ",\"event_id\":\"event-" + id + "\",\"updated_at\":\"" + updatedAt + "\"}";
+        return WebhookEvent.from(WebhookPayload.parse(MAPPER, json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
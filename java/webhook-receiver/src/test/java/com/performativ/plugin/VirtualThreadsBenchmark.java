@@ -0,0 +1,103 @@
+package com.performativ.plugin;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity fetches per second with {@link EntityFetcher} on platform worker
+ * pools of several sizes and on virtual threads, against a local API that
+ * answers each request after {@value #LATENCY_MS} ms, as handling a webhook
+ * mostly waits on such calls. Also reports the peak number of platform
+ * threads during each run.
+ *
+ * <p>Not run by {@code mvn test}; run it with
+ * {@code mvn test -Dtest=VirtualThreadsBenchmark}.
+ */
+class VirtualThreadsBenchmark {
+
+    private static final int LATENCY_MS = 50;
+    private static final int FETCHES = 5_000;
+    private static final int MAX_IN_FLIGHT = 1_000;
+
+    private HttpServer api;
+
+    @BeforeEach
+    void startApi() throws IOException {
+        api = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1_000);
+        api.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        api.createContext("/token-broker/oauth/token", exchange -> {
+            byte[] body = "{\"access_token\":\"token\",\"expires_in\":3600}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        api.createContext("/api/v1/", exchange -> {
+            try {
+                Thread.sleep(LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"data\":{\"id\":1}}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        api.start();
+    }
+
+    @AfterEach
+    void stopApi() {
+        api.stop(0);
+    }
+
+    @Test
+    void platformPoolsAgainstVirtualThreads() throws Exception {
+        // Warm up the HTTP client and the JIT
+        fetchesPerSecond(false, 64);
+
+        for (int workers : new int[]{8, 64, 256}) {
+            System.out.printf("platform threads, %d workers: %s%n", workers, fetchesPerSecond(false, workers));
+        }
+        System.out.printf("virtual threads: %s%n", fetchesPerSecond(true, 0));
+    }
+
+    private String fetchesPerSecond(boolean virtualThreads, int workers) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        String base = "http://127.0.0.1:" + api.getAddress().getPort();
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("handler", (EntityHandler) (event, entity) -> { }));
+        EntityFetcher fetcher = new EntityFetcher(beans.getBeanProvider(EntityHandler.class), true,
+                Math.max(1, workers), MAX_IN_FLIGHT, 30_000, FETCHES, "", 50, 25, "filter[id]",
+                base + "/token-broker", base, "client", "secret", "backend-api", virtualThreads);
+        try {
+            threads.resetPeakThreadCount();
+            long start = System.nanoTime();
+            List<CompletableFuture<Void>> done = new ArrayList<>(FETCHES);
+            for (int i = 0; i < FETCHES; i++) {
+                WebhookEvent event = new WebhookEvent(WebhookEvent.Entity.CLIENT, WebhookEvent.Event.UPDATED,
+                        i, 0, i, WebhookEvent.NO_TIMESTAMP, null);
+                done.add(fetcher.submit(event, "/api/v1/clients/" + i, null));
+            }
+            CompletableFuture.allOf(done.toArray(CompletableFuture[]::new)).get(5, TimeUnit.MINUTES);
+            long perSecond = FETCHES * 1_000_000_000L / (System.nanoTime() - start);
+            return perSecond + " fetches/s, peak " + threads.getPeakThreadCount() + " platform threads";
+        } finally {
+            fetcher.shutdown();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookAdmissionControlTest {
+
+    @Test
+    void admitsUntilMaxInFlightIsReached() {
+        WebhookAdmissionControl admission = new WebhookAdmissionControl(2, 0.8, 60);
+        long first = admission.begin();
+        assertThat(admission.checkAdmission(0, 0, 0, 0)).isZero();
+        admission.begin();
+        assertThat(admission.checkAdmission(0, 0, 0, 0)).isPositive();
+
+        admission.end(first);
+        assertThat(admission.checkAdmission(0, 0, 0, 0)).isZero();
+        assertThat(admission.inFlight()).isEqualTo(1);
+        assertThat(admission.rejectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsOnceTheQueueReachesTheWatermark() {
+        WebhookAdmissionControl admission = new WebhookAdmissionControl(150, 0.8, 60);
+
+        assertThat(admission.checkAdmission(79, 100, 0, 0)).isZero();
+        assertThat(admission.checkAdmission(80, 100, 0, 0)).isPositive();
+    }
+
+    @Test
+    void rejectsATenantWhoseLaneReachesTheWatermark() {
+        WebhookAdmissionControl admission = new WebhookAdmissionControl(150, 0.8, 60);
+
+        assertThat(admission.checkAdmission(10, 100, 7, 10)).isZero();
+        assertThat(admission.checkAdmission(10, 100, 8, 10)).isPositive();
+    }
+
+    @Test
+    void retryAfterIsTheTimeToDrainThePendingWork() {
+        WebhookAdmissionControl admission = new WebhookAdmissionControl(150, 0.8, 60);
+        // One event that took two seconds
+        admission.end(admission.begin() - TimeUnit.SECONDS.toNanos(2));
+
+        assertThat(admission.rejectQueueFull(3)).isEqualTo(7);
+        assertThat(admission.rejectQueueFull(1_000)).isEqualTo(60);
+    }
+}
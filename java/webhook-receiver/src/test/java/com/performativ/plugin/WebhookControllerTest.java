@@ -0,0 +1,75 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/** Only tenant keys are configured, so there is no default key to fall back to. */
+@SpringBootTest(properties = {
+        "webhook.signing-key=",
+        "webhook.signing-keys=",
+        "webhook.tenant-keys=acme=key-for-acme",
+        "webhook.max-body-size=64KB",
+        "logging.level.com.performativ.plugin=WARN"})
+@AutoConfigureMockMvc
+class WebhookControllerTest {
+
+    private final SignatureVerifier acmeSigner = new SignatureVerifier("key-for-acme");
+
+    @Autowired
+    MockMvc mvc;
+
+    @Test
+    void registeredTenantWithAValidSignatureIsAccepted() throws Exception {
+        byte[] body = body();
+        mvc.perform(webhook(body).header("x-tenant", "acme").header("x-webhook-signature", acmeSigner.sign(body)))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void unknownTenantIsRejectedEvenWhenUnsigned() throws Exception {
+        mvc.perform(webhook(body()).header("x-tenant", "mallory"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(jsonPath("$.error").value("Unknown tenant"));
+    }
+
+    @Test
+    void missingTenantIsRejected() throws Exception {
+        mvc.perform(webhook(body()))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void unknownTenantCannotUseARegisteredTenantsSignature() throws Exception {
+        byte[] body = body();
+        mvc.perform(webhook(body).header("x-tenant", "mallory").header("x-webhook-signature", acmeSigner.sign(body)))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void bodyOverTheLimitIsRejected() throws Exception {
+        byte[] body = ("{\"padding\":\"" + "x".repeat(65 * 1024) + "\"}").getBytes(StandardCharsets.UTF_8);
+        mvc.perform(webhook(body).header("x-tenant", "acme").header("x-webhook-signature", acmeSigner.sign(body)))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    private static MockHttpServletRequestBuilder webhook(byte[] body) {
+        return post("/webhook").contentType(MediaType.APPLICATION_JSON).content(body);
+    }
+
+    private static byte[] body() {
+        return ("{\"event_id\":\"" + UUID.randomUUID() + "\",\"entity\":\"Client\",\"entity_id\":1,"
+                + "\"event\":\"Updated\"}").getBytes(StandardCharsets.UTF_8);
+    }
+}
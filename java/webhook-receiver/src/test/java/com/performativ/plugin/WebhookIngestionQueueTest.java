@@ -0,0 +1,85 @@
+package com.performativ.plugin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebhookIngestionQueueTest {
+
+    private static final byte[] BODY = "{\"event_id\":\"e1\",\"entity\":\"Client\",\"entity_id\":1,\"event\":\"Updated\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void queuedWebhookIsProcessedByAWorker() throws Exception {
+        WebhookEventProcessor processor = mock(WebhookEventProcessor.class);
+        WebhookIngestionQueue queue = new WebhookIngestionQueue(processor, new TenantRegistry("", "", ""),
+                new ObjectMapper(), new WebhookAdmissionControl(150, 0.8, 60), true, 100, 100, 1, "", false);
+        try {
+            assertThat(queue.offer(BODY, Map.of(), null)).isTrue();
+            verify(processor, timeout(5_000)).submitIfNew(any(), any(), anyBoolean());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void fullQueueRefusesWebhooks() throws Exception {
+        WebhookEventProcessor processor = mock(WebhookEventProcessor.class);
+        CountDownLatch finish = new CountDownLatch(1);
+        when(processor.submitIfNew(any(), any(), anyBoolean())).thenAnswer(invocation -> {
+            finish.await();
+            return CompletableFuture.completedFuture(null);
+        });
+        WebhookIngestionQueue queue = new WebhookIngestionQueue(processor, new TenantRegistry("", "", ""),
+                new ObjectMapper(), new WebhookAdmissionControl(150, 0.8, 60), true, 1, 1, 1, "", false);
+        try {
+            // The only worker takes the first webhook and blocks, the second fills the queue
+            assertThat(queue.offer(BODY, Map.of(), null)).isTrue();
+            verify(processor, timeout(5_000)).submitIfNew(any(), any(), anyBoolean());
+            assertThat(queue.offer(BODY, Map.of(), null)).isTrue();
+
+            assertThat(queue.offer(BODY, Map.of(), null)).isFalse();
+        } finally {
+            finish.countDown();
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    void queuedEventCountsInFlightUntilItsProcessingFinishes() throws Exception {
+        WebhookEventProcessor processor = mock(WebhookEventProcessor.class);
+        CompletableFuture<Void> processing = new CompletableFuture<>();
+        when(processor.submitIfNew(any(), any(), anyBoolean())).thenReturn(processing);
+        WebhookAdmissionControl admissionControl = new WebhookAdmissionControl(150, 0.8, 60);
+        WebhookIngestionQueue queue = new WebhookIngestionQueue(processor, new TenantRegistry("", "", ""),
+                new ObjectMapper(), admissionControl, true, 100, 100, 1, "", false);
+        try {
+            assertThat(queue.offer(BODY, Map.of(), null)).isTrue();
+
+            // Handed over to the processor, which has not finished yet
+            verify(processor, timeout(5_000)).submitIfNew(any(), any(), anyBoolean());
+            assertThat(admissionControl.inFlight()).isEqualTo(1);
+
+            processing.complete(null);
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (admissionControl.inFlight() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(admissionControl.inFlight()).isZero();
+        } finally {
+            queue.shutdown();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.performativ.plugin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysEntriesThatWereNotAcknowledged() throws IOException {
+        try (WebhookJournal journal = open()) {
+            long first = journal.append("acme", Map.of("x-tenant", "acme"), body("first"));
+            long second = journal.append(null, Map.of(), body("second"));
+            long third = journal.append(null, Map.of("x-api-domain", "api.example.com"), body("third"));
+            journal.ack(second);
+            assertThat(List.of(first, second, third)).isSorted().doesNotHaveDuplicates();
+        }
+
+        List<WebhookJournal.Entry> replayed;
+        try (WebhookJournal journal = new WebhookJournal(directory)) {
+            replayed = journal.replay();
+        }
+        assertThat(replayed).extracting(e -> new String(e.body(), StandardCharsets.UTF_8))
+                .containsExactly("first", "third");
+        assertThat(replayed.get(0).namespace()).isEqualTo("acme");
+        assertThat(replayed.get(0).headers()).containsEntry("x-tenant", "acme");
+        assertThat(replayed.get(1).namespace()).isNull();
+        assertThat(replayed.get(1).headers()).containsEntry("x-api-domain", "api.example.com");
+    }
+
+    @Test
+    void replayedEntriesStayUntilAcknowledged() throws IOException {
+        try (WebhookJournal journal = open()) {
+            journal.append(null, Map.of(), body("pending"));
+        }
+        try (WebhookJournal journal = new WebhookJournal(directory)) {
+            // Replayed but not processed before the next restart
+            assertThat(journal.replay()).hasSize(1);
+        }
+        try (WebhookJournal journal = new WebhookJournal(directory)) {
+            List<WebhookJournal.Entry> replayed = journal.replay();
+            assertThat(replayed).hasSize(1);
+            journal.ack(replayed.get(0).seq());
+        }
+        try (WebhookJournal journal = new WebhookJournal(directory)) {
+            assertThat(journal.replay()).isEmpty();
+        }
+    }
+
+    @Test
+    void interruptedAppendIsDurableAndLeavesTheJournalUsable() throws Exception {
+        try (WebhookJournal journal = open()) {
+            Thread.currentThread().interrupt();
+            long interrupted;
+            try {
+                interrupted = journal.append(null, Map.of(), body("interrupted"));
+                assertThat(Thread.currentThread().isInterrupted()).isTrue();
+            } finally {
+                Thread.interrupted();
+            }
+
+            // Other threads keep appending and acknowledging
+            ExecutorService others = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<Long>> appends = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    String text = "other-" + i;
+                    appends.add(others.submit(() -> journal.append(null, Map.of(), body(text))));
+                }
+                for (Future<Long> append : appends) {
+                    journal.ack(append.get());
+                }
+            } finally {
+                others.shutdown();
+            }
+            assertThat(interrupted).isPositive();
+        }
+
+        try (WebhookJournal journal = new WebhookJournal(directory)) {
+            assertThat(journal.replay()).extracting(e -> new String(e.body(), StandardCharsets.UTF_8))
+                    .containsExactly("interrupted");
+        }
+    }
+
+    @Test
+    void keepsHeaderValuesLongerThanAShortLength() throws IOException {
+        String tenant = "t".repeat(40_000);
+        String domain = "d".repeat(70_000);
+        try (WebhookJournal journal = open()) {
+            journal.append(tenant, Map.of("x-tenant", tenant, "x-api-domain", domain), body("long"));
+        }
+
+        try (WebhookJournal journal = new WebhookJournal(directory)) {
+            WebhookJournal.Entry entry = journal.replay().get(0);
+            assertThat(entry.namespace()).isEqualTo(tenant);
+            assertThat(entry.headers()).containsEntry("x-tenant", tenant).containsEntry("x-api-domain", domain);
+            assertThat(entry.body()).isEqualTo(body("long"));
+        }
+    }
+
+    @Test
+    void tornRecordEndsReplayOfItsSegment() throws IOException {
+        try (WebhookJournal journal = open()) {
+            journal.append(null, Map.of(), body("complete"));
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(p -> p.toString().endsWith(".journal"))
+                    .filter(p -> p.toFile().length() > 0)
+                    .findFirst().orElseThrow();
+        }
+        // The length and CRC of a record whose body never made it to disk
+        Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 1, 0}, StandardOpenOption.APPEND);
+
+        try (WebhookJournal journal = new WebhookJournal(directory)) {
+            assertThat(journal.replay()).extracting(e -> new String(e.body(), StandardCharsets.UTF_8))
+                    .containsExactly("complete");
+        }
+    }
+
+    @Test
+    void appendAfterCloseFails() throws IOException {
+        WebhookJournal journal = open();
+        journal.close();
+        org.assertj.core.api.Assertions.assertThatIOException()
+                .isThrownBy(() -> journal.append(null, Map.of(), body("late")));
+    }
+
+    private WebhookJournal open() throws IOException {
+        WebhookJournal journal = new WebhookJournal(directory);
+        assertThat(journal.replay()).isEmpty();
+        return journal;
+    }
+
+    private static byte[] body(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
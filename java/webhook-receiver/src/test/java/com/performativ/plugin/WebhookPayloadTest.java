@@ -0,0 +1,50 @@
+package com.performativ.plugin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+
+class WebhookPayloadTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void extractsTheTopLevelRoutingFields() throws IOException {
+        WebhookPayload payload = parse("{\"custom_config\":{\"event_id\":\"nested\",\"entity\":[\"Portfolio\"]},"
+                + "\"event_id\":\"550e8400-e29b-41d4-a716-446655440000\",\"entity\":\"Client\",\"entity_id\":12345,"
+                + "\"event\":\"Updated\",\"updated_at\":\"2026-01-01T00:00:00Z\","
+                + "\"url\":\"https://api.example.com/api/v1/clients/12345\"}");
+
+        assertThat(payload.eventId()).isEqualTo("550e8400-e29b-41d4-a716-446655440000");
+        assertThat(payload.entity()).isEqualTo("Client");
+        assertThat(payload.entityId()).isEqualTo("12345");
+        assertThat(payload.event()).isEqualTo("Updated");
+        assertThat(payload.updatedAt()).isEqualTo("2026-01-01T00:00:00Z");
+        assertThat(payload.url()).isEqualTo("https://api.example.com/api/v1/clients/12345");
+        assertThat(payload.tree().path("custom_config").path("event_id").asText()).isEqualTo("nested");
+    }
+
+    @Test
+    void missingFieldsAreEmptyAndAMissingUrlIsNull() throws IOException {
+        WebhookPayload payload = parse("{\"entity\":\"Client\",\"event_id\":null,\"url\":null}");
+
+        assertThat(payload.eventId()).isEmpty();
+        assertThat(payload.entityId()).isEmpty();
+        assertThat(payload.url()).isNull();
+    }
+
+    @Test
+    void rejectsABodyThatIsNotAJsonObject() {
+        assertThatIOException().isThrownBy(() -> parse("[{\"event_id\":\"a\"}]"));
+        assertThatIOException().isThrownBy(() -> parse("{\"event_id\":\"a\""));
+    }
+
+    private static WebhookPayload parse(String json) throws IOException {
+        return WebhookPayload.parse(MAPPER, json.getBytes(StandardCharsets.UTF_8));
+    }
+}